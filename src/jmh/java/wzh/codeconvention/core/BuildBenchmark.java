@@ -0,0 +1,56 @@
+package wzh.codeconvention.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Index build throughput, reported as blocks per second
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 30)
+@Measurement(iterations = 3, time = 60)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BuildBenchmark {
+    @Param({"1", "4"})
+    public int copies;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"PARSE", "CHUNK"})
+    public BuildMode mode;
+
+    private Path guide, index;
+    private Searcher searcher;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long blocks;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        guide = Fixtures.syntheticGuide(copies);
+        index = Files.createTempFile("guide", ".idx");
+        searcher = new Searcher();
+        searcher.setBuildThreads(threads);
+        searcher.setBuildMode(mode);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(guide);
+        Files.deleteIfExists(index);
+    }
+
+    @Benchmark
+    public void build(Counters counters) throws IOException, IndexNotLoadedException {
+        searcher.build(guide.toString(), index.toString());
+        counters.blocks += Fixtures.countBlocks(searcher);
+    }
+}
@@ -0,0 +1,102 @@
+package wzh.codeconvention.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Locale;
+
+/*
+ * Compares an index built in chunk mode against the parser-based one of the same guide. Reports
+ * build times, precision and recall of (block, term) pairs of paragraphs, and overlap of top results
+ * for some typical queries. Run with:
+ *   mvn -P jmh compile exec:java -Dexec.mainClass=wzh.codeconvention.core.BuildModeComparison -Dexec.args=google.md
+ * Results on google.md are kept in benchmarks/build-mode-comparison.txt.
+ */
+public class BuildModeComparison {
+    private static final String[] QUERIES = {
+            "try catch", "exception", "static import", "naming convention", "javadoc", "line wrapping",
+            "braces", "annotation", "local variable", "switch statement", "constant name", "overload"
+    };
+    private static final int K = 10;
+
+    public static void main(String[] args) throws IOException, IndexNotLoadedException {
+        var guide = args.length > 0 ? args[0] : Fixtures.GUIDE;
+        var parseIndex = Files.createTempFile("parse", ".idx");
+        var chunkIndex = Files.createTempFile("chunk", ".idx");
+        try {
+            var parseSearcher = new Searcher();
+            var parseTime = timeBuild(parseSearcher, guide, parseIndex.toString(), BuildMode.PARSE);
+            var chunkSearcher = new Searcher();
+            var chunkTime = timeBuild(chunkSearcher, guide, chunkIndex.toString(), BuildMode.CHUNK);
+            System.out.printf(Locale.ROOT, "Build time: parse %.1f s, chunk %.1f s (%.1fx faster)%n",
+                    parseTime, chunkTime, parseTime / chunkTime);
+
+            // Terms extracted from each paragraph
+            var parsePairs = termPairs(IndexFile.load(parseIndex.toString()));
+            var chunkPairs = termPairs(IndexFile.load(chunkIndex.toString()));
+            var common = new HashSet<>(chunkPairs);
+            common.retainAll(parsePairs);
+            System.out.printf(Locale.ROOT, "Plain text terms: parse %d, chunk %d, precision %.3f, recall %.3f%n",
+                    parsePairs.size(), chunkPairs.size(), (double) common.size() / chunkPairs.size(),
+                    (double) common.size() / parsePairs.size());
+
+            // Results of chunk mode that the parser-based index also ranks in its top K
+            var overlapSum = 0.0;
+            for (var query : QUERIES) {
+                var expected = topBlocks(parseSearcher, query);
+                var actual = topBlocks(chunkSearcher, query);
+                var overlap = expected.isEmpty() ? 1.0 : (double) countCommon(expected, actual) / expected.size();
+                overlapSum += overlap;
+                System.out.printf(Locale.ROOT, "  %-20s top %d overlap %.2f%n", query, K, overlap);
+            }
+            System.out.printf(Locale.ROOT, "Mean top %d overlap: %.3f%n", K, overlapSum / QUERIES.length);
+        } finally {
+            Files.deleteIfExists(parseIndex);
+            Files.deleteIfExists(chunkIndex);
+        }
+    }
+
+    // Seconds taken to build the index, the pipeline is loaded beforehand so that only annotation counts
+    private static double timeBuild(Searcher searcher, String guide, String index, BuildMode mode)
+            throws IOException {
+        searcher.setBuildMode(mode);
+        var warmup = Files.createTempFile("warmup", ".md");
+        try {
+            Files.writeString(warmup, "# Warmup\nLoad the pipeline first.\n");
+            searcher.build(warmup.toString(), index);
+        } finally {
+            Files.deleteIfExists(warmup);
+        }
+        var start = System.nanoTime();
+        searcher.build(guide, index);
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    // Code blocks and tables are tokenized the same way in both modes, so they are left out
+    private static HashSet<String> termPairs(IndexFile file) {
+        var pairs = new HashSet<String>();
+        for (var i = 0; i < file.numTerms(); i++) {
+            var term = file.term(i);
+            for (var id : file.postings(i, false).ids) {
+                if (file.tags[id].getBlock().type == ContentType.PLAIN_TEXT)
+                    pairs.add(id + " " + term);
+            }
+        }
+        return pairs;
+    }
+
+    private static ArrayList<Integer> topBlocks(Searcher searcher, String query) throws IndexNotLoadedException {
+        var ids = new ArrayList<Integer>();
+        for (var result : searcher.search(query, K))
+            ids.add(result.getTag().getBlock().getId());
+        return ids;
+    }
+
+    private static int countCommon(ArrayList<Integer> expected, ArrayList<Integer> actual) {
+        var count = 0;
+        for (var id : actual)
+            if (expected.contains(id)) count++;
+        return count;
+    }
+}
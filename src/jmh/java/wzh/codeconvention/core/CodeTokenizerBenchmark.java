@@ -0,0 +1,47 @@
+package wzh.codeconvention.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+// Tokenizer throughput over the code blocks and tables of the guide, reported as blocks per second.
+// Compare with BuildBenchmark to see its share of the build.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodeTokenizerBenchmark {
+    private final ArrayList<Block> blocks = new ArrayList<>();
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long blocks;
+        public long terms;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        var guide = Fixtures.syntheticGuide(1);
+        try {
+            for (var tag : Document.parse(guide.toString()).tags) {
+                if (tag.getBlock().type != ContentType.PLAIN_TEXT)
+                    blocks.add(tag.getBlock());
+            }
+        } finally {
+            Files.deleteIfExists(guide);
+        }
+    }
+
+    @Benchmark
+    public void tokenize(Counters counters) {
+        for (var block : blocks)
+            counters.terms += CodeTokenizer.tokenize(block).size();
+        counters.blocks += blocks.size();
+    }
+}
@@ -0,0 +1,48 @@
+package wzh.codeconvention.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+// Markdown fixtures and index helpers shared by benchmarks
+class Fixtures {
+    static final String GUIDE = "google.md";
+    // Copies repeat the paragraphs of the guide, so trials in later forks build their index from cached terms
+    static final String ANNOTATION_CACHE = "target/jmh-annotations.cache";
+
+    // Concatenates copies of the guide, headlines of later copies are tagged to keep sections distinct
+    static Path syntheticGuide(int copies) throws IOException {
+        var lines = Files.readAllLines(Paths.get(GUIDE), StandardCharsets.UTF_8);
+        var output = new ArrayList<String>();
+        for (var c = 0; c < copies; c++) {
+            for (var line : lines) {
+                if (c > 0 && line.startsWith("# ")) continue; // keep a single document title
+                if (c > 0 && line.startsWith("#"))
+                    line = String.format("%s (copy %d)", line, c + 1);
+                output.add(line);
+            }
+        }
+        var path = Files.createTempFile("guide", ".md");
+        Files.write(path, output, StandardCharsets.UTF_8);
+        return path;
+    }
+
+    static Path buildIndex(Path guide) throws IOException {
+        var index = Files.createTempFile("guide", ".idx");
+        var searcher = new Searcher();
+        searcher.setAnnotationCache(ANNOTATION_CACHE, 1 << 16);
+        searcher.build(guide.toString(), index.toString());
+        return index;
+    }
+
+    static long countBlocks(Searcher searcher) throws IndexNotLoadedException {
+        long count = 0;
+        Node node;
+        for (var id = 0; (node = searcher.getNode(id)) != null; id++)
+            count += node.getContents().size();
+        return count;
+    }
+}
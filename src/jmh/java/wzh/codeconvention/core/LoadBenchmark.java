@@ -0,0 +1,52 @@
+package wzh.codeconvention.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Index load time, cold loads map the file into a fresh searcher once per iteration
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoadBenchmark {
+    @Param({"1", "4"})
+    public int copies;
+
+    private Path guide, index;
+    private Searcher searcher;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        guide = Fixtures.syntheticGuide(copies);
+        index = Fixtures.buildIndex(guide);
+        searcher = new Searcher();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(guide);
+        Files.deleteIfExists(index);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 10)
+    public Searcher coldLoad() throws IOException {
+        var fresh = new Searcher();
+        fresh.load(index.toString());
+        return fresh;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 3, time = 5)
+    @Measurement(iterations = 5, time = 5)
+    public Searcher warmLoad() throws IOException {
+        searcher.load(index.toString());
+        return searcher;
+    }
+}
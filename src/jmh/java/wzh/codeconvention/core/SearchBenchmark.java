@@ -0,0 +1,60 @@
+package wzh.codeconvention.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Single query latency, without the result cache every call ranks the index and a query cache size of 0 also
+// runs the query pipeline each time
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+    @Param({"1", "4"})
+    public int copies;
+
+    @Param({"try catch",
+            "how should the braces of an empty block or a block-like construct be formatted"})
+    public String query;
+
+    @Param({"0", "256"})
+    public int queryCacheSize;
+
+    @Param({"10", "2147483647"})
+    public int k;
+
+    // Repeating one query hits the result cache on every call after the first
+    @Param({"false", "true"})
+    public boolean resultCache;
+
+    private Path guide, index;
+    private Searcher searcher;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        guide = Fixtures.syntheticGuide(copies);
+        index = Fixtures.buildIndex(guide);
+        searcher = new Searcher(true, queryCacheSize);
+        if (!resultCache)
+            searcher.setResultCache(0, 0);
+        searcher.load(index.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(guide);
+        Files.deleteIfExists(index);
+    }
+
+    @Benchmark
+    public List<SearchResult> search() throws IndexNotLoadedException {
+        return searcher.search(query, k);
+    }
+}
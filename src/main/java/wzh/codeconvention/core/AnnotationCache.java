@@ -0,0 +1,132 @@
+package wzh.codeconvention.core;
+
+import edu.stanford.nlp.pipeline.DefaultPaths;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+
+import java.io.*;
+import java.net.JarURLConnection;
+import java.nio.file.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// On-disk cache from paragraph text to the terms extracted from it and their positions
+class AnnotationCache {
+    private static final int MAGIC = 0x43434143; // "CCAC"
+    private static final int FORMAT_VERSION = 3;
+    // Models loaded by the build pipelines, the lemmatizer has no model of its own
+    private static final String[] MODELS = {DefaultPaths.DEFAULT_POS_MODEL, DefaultPaths.DEFAULT_PARSER_MODEL};
+
+    private final Path path;
+    private final long signature;
+    private final boolean usable; // false if the signature cannot tell models apart, nothing is kept then
+    private final LruCache<Long, TermList> entries;
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+    // Signature identifies everything that affects extracted terms, entries of other signatures are discarded
+    AnnotationCache(String path, int maxEntries, String settings) throws IOException {
+        this.path = Paths.get(path);
+        this.entries = new LruCache<>(maxEntries);
+        // The version in the manifest of the code jar may be missing and says nothing about the models jar
+        var version = StanfordCoreNLP.class.getPackage().getImplementationVersion();
+        var models = describeModels();
+        usable = version != null || models != null;
+        this.signature = Hashes.of(String.format("%d\n%s\n%s\n%s", FORMAT_VERSION, version, models, settings));
+        if (usable) load();
+    }
+
+    // Name, size and checksum of each model resource, or null if none is found on the class path
+    private static String describeModels() throws IOException {
+        var description = new StringBuilder();
+        var found = false;
+        for (var model : MODELS) {
+            description.append(model);
+            var url = StanfordCoreNLP.class.getClassLoader().getResource(model);
+            if (url == null) {
+                description.append(" missing\n");
+                continue;
+            }
+            found = true;
+            var connection = url.openConnection();
+            if (connection instanceof JarURLConnection) {
+                var entry = ((JarURLConnection) connection).getJarEntry();
+                description.append(' ').append(entry.getSize()).append(' ').append(entry.getCrc());
+            } else {
+                description.append(' ').append(connection.getContentLengthLong())
+                        .append(' ').append(connection.getLastModified());
+            }
+            description.append('\n');
+        }
+        return found ? description.toString() : null;
+    }
+
+    TermList get(String text) {
+        var terms = entries.get(Hashes.of(normalize(text)));
+        (terms == null ? misses : hits).incrementAndGet();
+        return terms;
+    }
+
+    // Terms must not be modified once cached
+    void put(String text, TermList terms) {
+        if (!usable) return;
+        entries.put(Hashes.of(normalize(text)), terms);
+    }
+
+    long getHits() { return hits.get(); }
+    long getMisses() { return misses.get(); }
+
+    void resetCounters() {
+        hits.set(0);
+        misses.set(0);
+    }
+
+    // A cache file that cannot be read is only a miss, the next save replaces it
+    private void load() {
+        if (!Files.exists(path)) return;
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readLong() != signature)
+                return; // written by other settings or model version, start over
+            var size = Files.size(path);
+            var count = in.readInt();
+            for (var i = 0; i < count; i++) {
+                var key = in.readLong();
+                var nTerms = in.readInt();
+                // Each term takes at least its string length and position
+                if (nTerms < 0 || nTerms > size / (Short.BYTES + Integer.BYTES))
+                    throw new IOException("Corrupt term count in annotation cache.");
+                var terms = new TermList(nTerms);
+                for (var j = 0; j < nTerms; j++)
+                    terms.add(in.readUTF(), in.readInt());
+                entries.put(key, terms);
+            }
+        } catch (IOException | RuntimeException e) {
+            entries.clear(); // truncated or corrupt cache is useless
+        }
+    }
+
+    // Entries are written from least to most recently used, so that loading restores recency
+    void save() throws IOException {
+        if (!usable) return;
+        var temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(signature);
+            out.writeInt(entries.size());
+            var error = new IOException[1];
+            entries.forEach((var key, var terms) -> {
+                try {
+                    out.writeLong(key);
+                    out.writeInt(terms.size());
+                    for (var j = 0; j < terms.size(); j++) {
+                        out.writeUTF(terms.term(j));
+                        out.writeInt(terms.position(j));
+                    }
+                } catch (IOException e) {
+                    error[0] = e;
+                }
+            });
+            if (error[0] != null) throw error[0];
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String normalize(String text) { return QueryAnalyzer.normalize(text); }
+}
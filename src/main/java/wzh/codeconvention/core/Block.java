@@ -3,9 +3,10 @@ package wzh.codeconvention.core;
 import java.io.Serializable;
 
 public class Block implements Serializable {
+    int id = -1; // position in document order
     ContentType type;
     // Plain text
-    String text = null; // only plain text can be indexed and navigated
+    String text = null; // only plain text is annotated and can be navigated
     // Code block or table
     StringBuilder lines = new StringBuilder();
 
@@ -13,6 +14,7 @@ public class Block implements Serializable {
         this.type = type;
     }
 
+    public int getId() { return id; }
     public ContentType getType() { return type; }
 
     @Override
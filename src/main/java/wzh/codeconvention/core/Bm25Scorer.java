@@ -0,0 +1,48 @@
+package wzh.codeconvention.core;
+
+// Okapi BM25, rare terms weigh more and repeated terms saturate, long blocks are penalized.
+// Query words close to each other add a bonus inversely proportional to their distance. Matches in
+// code blocks and tables count less than those in prose.
+public class Bm25Scorer implements Scorer {
+    public static final double DEFAULT_K1 = 1.2;
+    public static final double DEFAULT_B = 0.75;
+    public static final double DEFAULT_PROXIMITY = 1.0;
+    public static final double DEFAULT_CODE_WEIGHT = 0.5;
+
+    private final double k1, b, proximity, codeWeight;
+
+    public Bm25Scorer() {
+        this(DEFAULT_K1, DEFAULT_B, DEFAULT_PROXIMITY);
+    }
+
+    public Bm25Scorer(double k1, double b, double proximity) {
+        this(k1, b, proximity, DEFAULT_CODE_WEIGHT);
+    }
+
+    public Bm25Scorer(double k1, double b, double proximity, double codeWeight) {
+        if (k1 < 0 || b < 0 || b > 1 || proximity < 0 || codeWeight < 0)
+            throw new IllegalArgumentException("Invalid BM25 parameters.");
+        this.k1 = k1;
+        this.b = b;
+        this.proximity = proximity;
+        this.codeWeight = codeWeight;
+    }
+
+    @Override
+    public double score(int termFreq, int docFreq, int blockLength, IndexStats stats) {
+        // Lucene's variant of IDF, which never goes negative for frequent terms
+        var idf = Math.log(1 + (stats.numBlocks() - docFreq + 0.5) / (docFreq + 0.5));
+        var norm = 1 - b + b * blockLength / stats.averageLength();
+        return idf * termFreq * (k1 + 1) / (termFreq + k1 * norm);
+    }
+
+    @Override
+    public double proximity(int distance) {
+        return proximity / distance;
+    }
+
+    @Override
+    public double fieldWeight(ContentType type) {
+        return type == ContentType.PLAIN_TEXT ? 1 : codeWeight;
+    }
+}
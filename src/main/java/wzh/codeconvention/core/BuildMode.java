@@ -0,0 +1,7 @@
+package wzh.codeconvention.core;
+
+// How noun phrases of paragraphs are found when building an index
+public enum BuildMode {
+    PARSE, // leaf noun phrases of the constituency tree
+    CHUNK  // runs of noun phrase tags from the POS tagger, much faster but less accurate
+}
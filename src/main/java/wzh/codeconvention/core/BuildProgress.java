@@ -0,0 +1,9 @@
+package wzh.codeconvention.core;
+
+// Receives progress of an index build, called from annotation threads in no particular order
+public interface BuildProgress {
+    BuildProgress NONE = (done, total) -> {};
+
+    // done of total paragraphs are annotated, paragraphs reused from a previous index are not counted
+    void update(int done, int total);
+}
@@ -0,0 +1,30 @@
+package wzh.codeconvention.core;
+
+// Snapshot of the counters of a cache
+public class CacheStats {
+    private final long hits, misses, evictions;
+    private final int size;
+
+    CacheStats(long hits, long misses, long evictions, int size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+    }
+
+    public long getHits() { return hits; }
+    public long getMisses() { return misses; }
+    public long getEvictions() { return evictions; }
+    public int getSize() { return size; } // entries at the time of the snapshot
+
+    public double getHitRatio() {
+        var requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d hits, %d misses (%.1f%%), %d evictions, %d entries",
+                hits, misses, getHitRatio() * 100, evictions, size);
+    }
+}
@@ -0,0 +1,119 @@
+package wzh.codeconvention.core;
+
+import java.util.regex.Pattern;
+
+/*
+ * Extracts terms from code blocks and tables without NLP. Identifiers are kept whole and also split
+ * into their camelCase and snake_case parts, so that "StringBuilder" is found by "builder". Parts
+ * take consecutive positions, so the phrase "string builder" matches too. Annotations give an "@name"
+ * term at the position of their name, and code blocks also keep common operators. Both are kept in the
+ * form the query analyzer gives them.
+ */
+class CodeTokenizer {
+    private static final String[] OPERATORS = {
+            "->", "::", "...", "==", "!=", "<=", ">=", "&&", "||", "++", "--", "+=", "-=", "<<", ">>", ">>>"
+    };
+    static final int MAX_OPERATOR_LENGTH = 3;
+    private static final Pattern tableSeparatorPattern = Pattern.compile("^\\|[\\s:|-]+\\|$");
+
+    static TermList tokenize(Block block) {
+        var terms = new TermList();
+        var position = 0;
+        var lines = block.toString().split("\n");
+        for (var i = 0; i < lines.length; i++) {
+            var line = lines[i];
+            // Skip code fences and the separator between table header and body
+            if (block.type == ContentType.CODE_BLOCK && line.startsWith("```")) continue;
+            if (block.type == ContentType.TABLE && tableSeparatorPattern.matcher(line).matches()) continue;
+            position = tokenize(line, block.type == ContentType.CODE_BLOCK, position, terms);
+        }
+        return terms;
+    }
+
+    // Returns position of the token after the line
+    private static int tokenize(String line, boolean withOperators, int position, TermList terms) {
+        var i = 0;
+        while (i < line.length()) {
+            var c = line.charAt(i);
+            if (Character.isJavaIdentifierStart(c)) {
+                var end = i + 1;
+                while (end < line.length() && Character.isJavaIdentifierPart(line.charAt(end))) end++;
+                position = addIdentifier(line, i, end, position, terms);
+                i = end;
+            } else if (c == '@') {
+                // Queries lemmatize "@Override" to one token, the name alone still finds it
+                var end = i + 1;
+                while (end < line.length() && Character.isJavaIdentifierPart(line.charAt(end))) end++;
+                if (end > i + 1 && Character.isJavaIdentifierStart(line.charAt(i + 1))) {
+                    terms.add(line.substring(i, end).toLowerCase(), position);
+                    position = Math.max(addIdentifier(line, i + 1, end, position, terms), position + 1);
+                    i = end;
+                } else {
+                    terms.add("@", position++);
+                    i++;
+                }
+            } else if (Character.isDigit(c)) {
+                // Skip number literals like the NLP path skips numbers
+                while (i < line.length() && Character.isLetterOrDigit(line.charAt(i))) i++;
+            } else {
+                var operator = withOperators ? matchOperator(line, i) : null;
+                if (operator != null) {
+                    terms.add(operator, position++);
+                    i += operator.length();
+                } else {
+                    i++;
+                }
+            }
+        }
+        return position;
+    }
+
+    // Adds the identifier and its parts if it has several, returns position of the next token
+    private static int addIdentifier(String line, int begin, int end, int position, TermList terms) {
+        if (end - begin < 2) return position; // single letters are loop variables and type parameters
+        var identifier = line.substring(begin, end).toLowerCase();
+        terms.add(identifier, position);
+
+        // Split at underscores, dollar signs and case changes: "parseHTTPResponse" gives parse, http, response
+        var nParts = 0;
+        var partBegin = begin;
+        for (var i = begin; i <= end; i++) {
+            if (i < end && !isBoundary(line, begin, end, i)) continue;
+            if (i > partBegin) {
+                var part = line.substring(partBegin, i).toLowerCase();
+                if (part.length() < end - begin) {
+                    if (nParts > 0 || part.length() > 1) terms.add(part, position + nParts);
+                    nParts++;
+                }
+            }
+            partBegin = i < end && (line.charAt(i) == '_' || line.charAt(i) == '$') ? i + 1 : i;
+        }
+        return position + Math.max(nParts, 1);
+    }
+
+    private static boolean isBoundary(String line, int begin, int end, int i) {
+        var c = line.charAt(i);
+        if (c == '_' || c == '$') return true;
+        if (i == begin || !Character.isUpperCase(c)) return false;
+        var prev = line.charAt(i - 1);
+        // Lower to upper case, or the last capital of an acronym followed by lower case
+        return Character.isLowerCase(prev) || Character.isDigit(prev)
+                || Character.isUpperCase(prev) && i + 1 < end && Character.isLowerCase(line.charAt(i + 1));
+    }
+
+    static boolean isOperator(String text) {
+        for (var operator : OPERATORS) {
+            if (operator.equals(text)) return true;
+        }
+        return false;
+    }
+
+    private static String matchOperator(String line, int i) {
+        String longest = null;
+        for (var operator : OPERATORS) {
+            if (line.startsWith(operator, i) && (longest == null || operator.length() > longest.length()))
+                longest = operator;
+        }
+        return longest;
+    }
+}
@@ -0,0 +1,133 @@
+package wzh.codeconvention.core;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+// Searches several guides together, each guide is an independent shard with its own index file
+public class Corpus {
+    private final Executor executor;
+    private final QueryAnalyzer analyzer;
+    private final Searcher builder = new Searcher(); // only used to build shards
+    private volatile Scorer scorer = new Bm25Scorer(); // term statistics are those of all shards together
+
+    // Shards by document name, replaced as a whole so that searches always see a complete corpus
+    private volatile Map<String, IndexFile> shards = Collections.emptyMap();
+
+    public Corpus() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public Corpus(Executor executor) {
+        this.executor = executor;
+        this.analyzer = new QueryAnalyzer(false, QueryAnalyzer.DEFAULT_CACHE_SIZE);
+    }
+
+    public Scorer getScorer() { return scorer; }
+
+    public void setScorer(Scorer scorer) {
+        this.scorer = Objects.requireNonNull(scorer);
+    }
+
+    // Builds or rebuilds one guide, other shards are untouched
+    public void build(String name, String textPath, String indexPath, boolean incremental) throws IOException {
+        builder.build(textPath, indexPath, incremental);
+        add(name, indexPath);
+    }
+
+    // Loads an index file as the shard of given document, replacing any shard of the same name
+    public void add(String name, String indexPath) throws IOException {
+        var file = IndexFile.load(indexPath);
+        synchronized (this) {
+            var updated = new TreeMap<>(shards);
+            updated.put(name, file);
+            shards = Collections.unmodifiableMap(updated);
+        }
+    }
+
+    public synchronized boolean remove(String name) {
+        if (!shards.containsKey(name)) return false;
+        var updated = new TreeMap<>(shards);
+        updated.remove(name);
+        shards = Collections.unmodifiableMap(updated);
+        return true;
+    }
+
+    public Set<String> getDocuments() { return shards.keySet(); }
+
+    // Returns at most k best results over all documents, each tagged with its source document
+    public ArrayList<SearchResult> search(String input, int k) throws IndexNotLoadedException {
+        var shards = this.shards;
+        if (shards.isEmpty()) throw new IndexNotLoadedException();
+        if (k <= 0) return new ArrayList<>();
+
+        // Fan out to all shards with the query lemmatized once
+        var query = analyzer.analyze(input);
+        var scorer = this.scorer;
+        var names = new ArrayList<>(shards.keySet());
+        var files = new ArrayList<>(shards.values());
+        var unitFutures = new ArrayList<CompletableFuture<QueryUnits>>();
+        for (var file : files)
+            unitFutures.add(CompletableFuture.supplyAsync(() -> QueryUnits.find(file, query), executor));
+        var units = new ArrayList<QueryUnits>();
+        unitFutures.forEach(future -> units.add(join(future)));
+
+        // Scores of different shards are only comparable with the statistics of the whole corpus, so a word
+        // rare in a small guide does not outweigh better matches in a large one
+        var docFreqs = new int[query.lemmas.size()];
+        var nBlocks = 0;
+        var totalLength = 0L;
+        for (var i = 0; i < files.size(); i++) {
+            nBlocks += files.get(i).numBlocks();
+            totalLength += files.get(i).totalLength;
+            var shardUnits = units.get(i);
+            for (var j = 0; j < shardUnits.size(); j++)
+                docFreqs[shardUnits.starts.get(j)] += shardUnits.postings.get(j).ids.length;
+        }
+        var stats = new FixedIndexStats(nBlocks, nBlocks == 0 ? 0 : (double) totalLength / nBlocks);
+
+        var futures = new ArrayList<CompletableFuture<ArrayList<SearchResult>>>();
+        for (var i = 0; i < files.size(); i++) {
+            var file = files.get(i);
+            var name = names.get(i);
+            var shardUnits = units.get(i);
+            futures.add(CompletableFuture.supplyAsync(() -> Searcher.rankUnits(file, shardUnits, k, name, scorer,
+                    stats, docFreqs, Metrics.NOOP, 0, file.tags.length), executor));
+        }
+
+        // Merge sorted per-shard lists, keeping k best
+        var heads = new PriorityQueue<ShardCursor>();
+        for (var future : futures) {
+            var list = join(future);
+            if (!list.isEmpty()) heads.add(new ShardCursor(list));
+        }
+        var result = new ArrayList<SearchResult>();
+        while (result.size() < k && !heads.isEmpty()) {
+            var cursor = heads.poll();
+            result.add(cursor.list.get(cursor.index++));
+            if (cursor.index < cursor.list.size()) heads.add(cursor);
+        }
+        return result;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    private static class ShardCursor implements Comparable<ShardCursor> {
+        final ArrayList<SearchResult> list;
+        int index = 0;
+
+        ShardCursor(ArrayList<SearchResult> list) { this.list = list; }
+
+        @Override
+        public int compareTo(ShardCursor o) { return list.get(index).compareTo(o.list.get(o.index)); }
+    }
+}
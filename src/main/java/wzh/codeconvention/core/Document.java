@@ -0,0 +1,70 @@
+package wzh.codeconvention.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+
+// Document tree of a parsed Markdown file, nodes and blocks are numbered in document order
+class Document implements MarkdownParser.Listener {
+    Node root = null;
+    ArrayList<Node> nodes = new ArrayList<>();
+    ArrayList<ContentTag> tags = new ArrayList<>(); // one for each block, indexed by block ID
+
+    static Document parse(String textPath) throws IOException {
+        var doc = new Document();
+        MarkdownParser.parse(textPath, doc);
+        return doc;
+    }
+
+    @Override
+    public void startNode(Node node) {
+        node.id = nodes.size();
+        nodes.add(node);
+        if (root == null)
+            root = node;
+        else if (node.parent != null)
+            node.parent.children.add(node);
+    }
+
+    @Override
+    public void endNode(Node node) {}
+
+    @Override
+    public void endBlock(Node node, Block block) {
+        block.id = tags.size();
+        node.contents.add(block);
+        tags.add(new ContentTag(node, block));
+    }
+
+    static long fingerprint(Node node) {
+        var fingerprint = new Fingerprint();
+        for (var block : node.contents)
+            fingerprint.add(block);
+        return fingerprint.finish(node.headline);
+    }
+
+    // Hash of a section's own contents and headline, excluding child sections
+    static class Fingerprint {
+        private final MessageDigest digest = Hashes.sha256();
+
+        void add(Block block) {
+            digest.update((byte) block.type.ordinal());
+            update(block.toString());
+        }
+
+        // Headline comes last, the root headline is only known after its first blocks
+        long finish(String headline) {
+            update(String.valueOf(headline));
+            return Hashes.toLong(digest.digest());
+        }
+
+        private void update(String str) {
+            var bytes = str.getBytes(StandardCharsets.UTF_8);
+            // Prefix length so that different splits of the same bytes hash differently
+            for (var shift = 24; shift >= 0; shift -= 8)
+                digest.update((byte) (bytes.length >>> shift));
+            digest.update(bytes);
+        }
+    }
+}
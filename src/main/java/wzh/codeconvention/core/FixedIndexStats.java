@@ -0,0 +1,18 @@
+package wzh.codeconvention.core;
+
+// Statistics given as values, such as those of sections or of several indexes together
+class FixedIndexStats implements Scorer.IndexStats {
+    private final int nBlocks;
+    private final double averageLength;
+
+    FixedIndexStats(int nBlocks, double averageLength) {
+        this.nBlocks = nBlocks;
+        this.averageLength = averageLength;
+    }
+
+    @Override
+    public int numBlocks() { return nBlocks; }
+
+    @Override
+    public double averageLength() { return averageLength; }
+}
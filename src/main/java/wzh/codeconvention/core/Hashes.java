@@ -0,0 +1,27 @@
+package wzh.codeconvention.core;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// 64-bit content hashes, taken from the leading bytes of SHA-256
+class Hashes {
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every Java platform supports SHA-256
+        }
+    }
+
+    static long of(String str) {
+        return toLong(sha256().digest(str.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static long toLong(byte[] hash) {
+        long value = 0;
+        for (var i = 0; i < Long.BYTES; i++)
+            value = (value << 8) | Byte.toUnsignedLong(hash[i]);
+        return value;
+    }
+}
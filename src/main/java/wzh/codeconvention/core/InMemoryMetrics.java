@@ -0,0 +1,52 @@
+package wzh.codeconvention.core;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+// Keeps a latency histogram of each phase and totals of counters since creation or the last reset
+public class InMemoryMetrics implements Metrics {
+    private final EnumMap<Phase, LatencyHistogram> timings = new EnumMap<>(Phase.class); // in nanoseconds
+    private final EnumMap<Counter, LongAdder> counters = new EnumMap<>(Counter.class);
+
+    public InMemoryMetrics() {
+        // Maps are filled once, so concurrent readers never see them change
+        for (var phase : Phase.values())
+            timings.put(phase, new LatencyHistogram());
+        for (var counter : Counter.values())
+            counters.put(counter, new LongAdder());
+    }
+
+    @Override
+    public void recordTime(Phase phase, long nanos) { timings.get(phase).record(nanos); }
+
+    @Override
+    public void increment(Counter counter, long delta) { counters.get(counter).add(delta); }
+
+    public LatencyHistogram getTimings(Phase phase) { return timings.get(phase); }
+
+    public long getCount(Counter counter) { return counters.get(counter).sum(); }
+
+    public void reset() {
+        timings.values().forEach(LatencyHistogram::reset);
+        counters.values().forEach(LongAdder::reset);
+    }
+
+    // Table of phases that were recorded, followed by counters
+    public String report() {
+        var builder = new StringBuilder(String.format(Locale.ROOT, "%-16s %8s %12s %10s %10s %10s %10s%n",
+                "phase", "count", "total ms", "mean us", "p50 us", "p99 us", "max us"));
+        for (var phase : Phase.values()) {
+            var histogram = timings.get(phase);
+            var count = histogram.getCount();
+            if (count == 0) continue;
+            builder.append(String.format(Locale.ROOT, "%-16s %8d %12.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    phase.name().toLowerCase(), count, histogram.getMean() * count / 1e6,
+                    histogram.getMean() / 1e3, histogram.getValueAtPercentile(50) / 1e3,
+                    histogram.getValueAtPercentile(99) / 1e3, histogram.getMax() / 1e3));
+        }
+        for (var counter : Counter.values())
+            builder.append(String.format("%-16s %8d%n", counter.name().toLowerCase(), getCount(counter)));
+        return builder.toString();
+    }
+}
@@ -0,0 +1,339 @@
+package wzh.codeconvention.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Binary index format, all integers are big-endian:
+ *   header   magic, version, build mode, average block length, #nodes, #blocks, #terms and absolute
+ *            offsets of the five sections
+ *   strings  length-prefixed UTF-8 strings, referred to by their offset in this section
+ *   nodes    (parent ID, level, headline, fingerprint) for each node in document order
+ *   blocks   (node ID, type, text, number of terms) for each block in document order
+ *   terms    (term, postings offset, postings count, rollups offset, rollups count) sorted by the UTF-8
+ *            bytes of term
+ *   postings (block ID gap, term frequency, position gaps) of each term as variable-length integers,
+ *            sorted by ID. Positions are token offsets of the term in the block. They are followed by
+ *            the term's rollups, (node ID gap, term frequency) of each node whose subtree contains it.
+ * The document tree is rebuilt on load, while terms and postings stay in the mapped file
+ * and are only decoded when looked up. Blocks of a subtree are contiguous, since both nodes and
+ * blocks are in document order. A loaded index is never modified, so it can be
+ * shared by concurrent searches.
+ */
+class IndexFile implements Scorer.IndexStats, PostingLookup {
+    static final int MAGIC = 0x43434958; // "CCIX"
+    static final int VERSION = 7;
+    static final int HEADER_SIZE = 48;
+    private static final int NODE_RECORD_SIZE = 20;
+    private static final int BLOCK_RECORD_SIZE = 13;
+    private static final int TERM_RECORD_SIZE = 20;
+
+    // Parsed text
+    final BuildMode mode; // how terms were extracted
+    final Node root;
+    final Node[] nodes;
+    final long[] fingerprints; // content hash of each node, see Document.fingerprint
+    final ContentTag[] tags; // indexed by block ID
+    final int[] tagLengths; // length of each tag's text
+    final int[] blockLengths; // number of terms extracted from each block
+    private final int nIndexedBlocks;
+    private final double averageLength;
+    final long totalLength; // of all blocks, to combine statistics of several indexes
+
+    // Sections are nodes with their subtrees, ranked by the rollups of the terms they contain
+    final int[] sectionLengths; // number of terms in the blocks of each subtree
+    final int[] sectionBegins, sectionEnds; // range of block IDs in each subtree
+    final Scorer.IndexStats sectionStats;
+
+    // Mapped dictionary, only read with absolute indices so that threads can share it
+    private final ByteBuffer buffer;
+    private final int nTerms, stringsOffset, stringsEnd, termsOffset, postingsOffset;
+
+    static IndexFile load(String indexPath) throws IOException {
+        ByteBuffer buffer;
+        try (var channel = FileChannel.open(Paths.get(indexPath), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            return new IndexFile(buffer);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            // Counts and references are checked against the file, so a corrupted one fails here instead of
+            // allocating a wrong amount or reading past a section
+            throw new InvalidIndexException("Index file is corrupted.");
+        }
+    }
+
+    private IndexFile(ByteBuffer buffer) throws InvalidIndexException {
+        this.buffer = buffer;
+
+        // Check header
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new InvalidIndexException("Not an index file.");
+        if (buffer.getInt(4) != VERSION)
+            throw new InvalidIndexException("Unsupported index version.");
+        mode = BuildMode.values()[buffer.getInt(8)];
+        averageLength = buffer.getFloat(12);
+        var nNodes = buffer.getInt(16);
+        var nBlocks = buffer.getInt(20);
+        nTerms = buffer.getInt(24);
+        stringsOffset = buffer.getInt(28);
+        var nodesOffset = buffer.getInt(32);
+        var blocksOffset = buffer.getInt(36);
+        termsOffset = buffer.getInt(40);
+        postingsOffset = buffer.getInt(44);
+        stringsEnd = nodesOffset;
+
+        // Sections must be in order within the file and hold as many records as the header counts
+        if (nNodes < 1 || nBlocks < 0 || nTerms < 0 || stringsOffset < HEADER_SIZE || nodesOffset < stringsOffset
+                || postingsOffset > buffer.limit()
+                || (long) nNodes * NODE_RECORD_SIZE > (long) blocksOffset - nodesOffset
+                || (long) nBlocks * BLOCK_RECORD_SIZE > (long) termsOffset - blocksOffset
+                || (long) nTerms * TERM_RECORD_SIZE > (long) postingsOffset - termsOffset)
+            throw new InvalidIndexException("Index file is corrupted.");
+        for (var i = 0; i < nTerms; i++) {
+            var pos = termsOffset + i * TERM_RECORD_SIZE;
+            checkString(buffer.getInt(pos));
+            checkRange(buffer.getInt(pos + 4), buffer.getInt(pos + 8));
+            checkRange(buffer.getInt(pos + 12), buffer.getInt(pos + 16));
+        }
+
+        // Rebuild document tree
+        nodes = new Node[nNodes];
+        fingerprints = new long[nNodes];
+        for (var i = 0; i < nNodes; i++) {
+            var pos = nodesOffset + i * NODE_RECORD_SIZE;
+            var node = new Node();
+            node.id = i;
+            node.level = buffer.getInt(pos + 4);
+            node.headline = readString(buffer.getInt(pos + 8));
+            fingerprints[i] = buffer.getLong(pos + 12);
+            var parentId = buffer.getInt(pos);
+            if (parentId >= i)
+                throw new InvalidIndexException("Index file is corrupted.");
+            if (parentId >= 0) {
+                node.parent = nodes[parentId];
+                node.parent.children.add(node);
+            }
+            nodes[i] = node;
+        }
+        root = nodes[0];
+
+        // Attach blocks to nodes
+        tags = new ContentTag[nBlocks];
+        tagLengths = new int[nBlocks];
+        blockLengths = new int[nBlocks];
+        var nIndexed = 0;
+        var total = 0L;
+        for (var i = 0; i < nBlocks; i++) {
+            var pos = blocksOffset + i * BLOCK_RECORD_SIZE;
+            var node = nodes[buffer.getInt(pos)];
+            var block = new Block(ContentType.values()[buffer.get(pos + 4)]);
+            block.id = i;
+            var str = readString(buffer.getInt(pos + 5));
+            if (block.type == ContentType.PLAIN_TEXT)
+                block.text = str;
+            else
+                block.lines.append(str);
+            node.contents.add(block);
+            tags[i] = new ContentTag(node, block);
+            tagLengths[i] = String.valueOf(node.headline).length() + 1 + str.length();
+            blockLengths[i] = buffer.getInt(pos + 9);
+            if (blockLengths[i] > 0) nIndexed++;
+            total += blockLengths[i];
+        }
+        nIndexedBlocks = nIndexed;
+        totalLength = total;
+
+        // Children come after their parents, so subtrees are complete when visited backwards
+        sectionLengths = new int[nNodes];
+        sectionBegins = new int[nNodes];
+        sectionEnds = new int[nNodes];
+        for (var i = nNodes - 1; i >= 0; i--) {
+            var node = nodes[i];
+            var contents = node.contents;
+            var begin = contents.isEmpty() ? Integer.MAX_VALUE : contents.get(0).id;
+            var end = contents.isEmpty() ? 0 : contents.get(contents.size() - 1).id + 1;
+            for (var block : contents)
+                sectionLengths[i] += blockLengths[block.id];
+            for (var child : node.children) {
+                sectionLengths[i] += sectionLengths[child.id];
+                if (sectionBegins[child.id] < sectionEnds[child.id]) {
+                    begin = Math.min(begin, sectionBegins[child.id]);
+                    end = Math.max(end, sectionEnds[child.id]);
+                }
+            }
+            sectionBegins[i] = Math.min(begin, end);
+            sectionEnds[i] = end;
+        }
+        var nIndexedSections = 0;
+        var totalSectionLength = 0L;
+        for (var length : sectionLengths) {
+            if (length == 0) continue;
+            nIndexedSections++;
+            totalSectionLength += length;
+        }
+        // A section with at least one term counts as a block
+        sectionStats = new FixedIndexStats(nIndexedSections,
+                nIndexedSections == 0 ? 0 : (double) totalSectionLength / nIndexedSections);
+    }
+
+    @Override
+    public int numBlocks() { return nIndexedBlocks; }
+
+    @Override
+    public double averageLength() { return averageLength; }
+
+    int numTerms() { return nTerms; }
+
+    String term(int index) {
+        return readString(buffer.getInt(termsOffset + index * TERM_RECORD_SIZE));
+    }
+
+    // Number of UTF-8 bytes in term at given index
+    int termLength(int index) {
+        return buffer.getInt(stringsOffset + buffer.getInt(termsOffset + index * TERM_RECORD_SIZE));
+    }
+
+    byte termByte(int index, int offset) {
+        return buffer.get(stringsOffset + buffer.getInt(termsOffset + index * TERM_RECORD_SIZE) + 4 + offset);
+    }
+
+    // Number of blocks containing term at given index
+    int documentFrequency(int index) {
+        return buffer.getInt(termsOffset + index * TERM_RECORD_SIZE + 8);
+    }
+
+    @Override
+    public Postings postings(String term, boolean withPositions) {
+        var index = findTerm(term.getBytes(StandardCharsets.UTF_8));
+        return index < 0 ? null : postings(index, withPositions);
+    }
+
+    @Override
+    public Postings expand(String lemma) { return TermExpander.expand(this, lemma); }
+
+    // Returns postings of the term at given index of the term table, positions are skipped unless asked for
+    Postings postings(int index, boolean withPositions) {
+        var pos = termsOffset + index * TERM_RECORD_SIZE;
+        var offset = new int[] {postingsOffset + buffer.getInt(pos + 4)};
+        var count = buffer.getInt(pos + 8);
+        var ids = new int[count];
+        var freqs = new int[count];
+        var positions = withPositions ? new IntList(count) : null;
+        var id = 0;
+        for (var i = 0; i < count; i++) {
+            id += readVarInt(offset);
+            ids[i] = id;
+            freqs[i] = readVarInt(offset);
+            var position = 0;
+            for (var j = 0; j < freqs[i]; j++) {
+                position += readVarInt(offset);
+                if (positions != null) positions.add(position);
+            }
+        }
+        return new Postings(ids, freqs, positions == null ? null : positions.toArray());
+    }
+
+    // Returns rollups of the term at given index, IDs of the result are node IDs and there are no positions
+    Postings sectionPostings(int index) {
+        var pos = termsOffset + index * TERM_RECORD_SIZE;
+        var offset = new int[] {postingsOffset + buffer.getInt(pos + 12)};
+        var count = buffer.getInt(pos + 16);
+        var ids = new int[count];
+        var freqs = new int[count];
+        var id = 0;
+        for (var i = 0; i < count; i++) {
+            id += readVarInt(offset);
+            ids[i] = id;
+            freqs[i] = readVarInt(offset);
+        }
+        return new Postings(ids, freqs, null);
+    }
+
+    // Decode variable-length integer at offset[0] and move past it
+    private int readVarInt(int[] offset) {
+        int value = 0, shift = 0;
+        byte b;
+        do {
+            b = buffer.get(offset[0]++);
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    // Binary search over term table, returns (-(insertion point) - 1) if not found
+    int findTerm(byte[] key) {
+        int low = 0, high = nTerms - 1;
+        while (low <= high) {
+            var mid = (low + high) >>> 1;
+            var diff = compareString(buffer.getInt(termsOffset + mid * TERM_RECORD_SIZE), key);
+            if (diff < 0) low = mid + 1;
+            else if (diff > 0) high = mid - 1;
+            else return mid;
+        }
+        return -(low + 1);
+    }
+
+    // Returns index of the first term after from not starting with given prefix, the term at from must
+    // start with it. Terms sharing a prefix are adjacent in the sorted table.
+    int findPrefixEnd(byte[] prefix, int length, int from) {
+        int low = from, high = nTerms - 1;
+        while (low <= high) {
+            var mid = (low + high) >>> 1;
+            if (startsWith(mid, prefix, length)) low = mid + 1;
+            else high = mid - 1;
+        }
+        return low;
+    }
+
+    private boolean startsWith(int index, byte[] prefix, int length) {
+        var pos = stringsOffset + buffer.getInt(termsOffset + index * TERM_RECORD_SIZE);
+        if (buffer.getInt(pos) < length) return false;
+        for (var i = 0; i < length; i++)
+            if (buffer.get(pos + 4 + i) != prefix[i]) return false;
+        return true;
+    }
+
+    // Compare a stored string with given bytes without decoding it
+    private int compareString(int ref, byte[] key) {
+        var pos = stringsOffset + ref;
+        var length = buffer.getInt(pos);
+        var common = Math.min(length, key.length);
+        for (var i = 0; i < common; i++) {
+            var diff = Byte.toUnsignedInt(buffer.get(pos + 4 + i)) - Byte.toUnsignedInt(key[i]);
+            if (diff != 0) return diff;
+        }
+        return length - key.length;
+    }
+
+    // A term's postings start inside the postings section, and there are no more of them than bytes left
+    private void checkRange(int offset, int count) {
+        if (offset < 0 || count < 0 || count > buffer.limit() - postingsOffset - offset)
+            throw new IndexOutOfBoundsException("Postings out of range.");
+    }
+
+    // Returns position of the referred string, which must lie within the strings section
+    private int checkString(int ref) {
+        if (ref < 0 || ref > stringsEnd - stringsOffset - 4)
+            throw new IndexOutOfBoundsException("String reference out of range.");
+        var pos = stringsOffset + ref;
+        var length = buffer.getInt(pos);
+        if (length < 0 || length > stringsEnd - pos - 4)
+            throw new IndexOutOfBoundsException("String length out of range.");
+        return pos;
+    }
+
+    private String readString(int ref) {
+        if (ref < 0) return null;
+        var pos = checkString(ref);
+        var bytes = new byte[buffer.getInt(pos)];
+        for (var i = 0; i < bytes.length; i++)
+            bytes[i] = buffer.get(pos + 4 + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,244 @@
+package wzh.codeconvention.core;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+// Writes an index in the binary format described in IndexFile. Each section is streamed to its own
+// temporary file, so memory use does not depend on the size of the index. Rollups of each term to the
+// nodes containing its blocks are summed while its postings are added.
+class IndexWriter implements Closeable {
+    private final Path target;
+    private final BuildMode mode;
+    private final Path[] sectionPaths = new Path[5];
+    private final DataOutputStream strings, nodes, blocks, terms, postings;
+    private int nNodes = 0, nBlocks = 0, nTerms = 0;
+    private long totalLength = 0;
+    private int nIndexedBlocks = 0;
+
+    // Node of each block and parent of each node, to roll postings up the document tree
+    private final IntList blockNodes = new IntList();
+    private final IntList nodeParents = new IntList();
+
+    // Postings of the current term and positions of the current posting
+    private boolean inTerm = false;
+    private int termRef, termOffset, termCount;
+    private int remainingPostings = 0, prevId = 0;
+    private int remainingPositions = 0, prevPosition = 0;
+
+    // Frequency of the current term in the subtree of each node, and the nodes where it is not zero
+    private int[] rollupFreqs = new int[0];
+    private final IntList rollupNodes = new IntList();
+
+    // blockLengths are indexed by block ID
+    static void write(String indexPath, BuildMode mode, Document doc, int[] blockLengths,
+                      Map<String, PostingList> dict) throws IOException {
+        try (var writer = new IndexWriter(indexPath, mode)) {
+            for (var node : doc.nodes)
+                writer.addNode(node, Document.fingerprint(node));
+            for (var tag : doc.tags)
+                writer.addBlock(tag.getNode().id, tag.getBlock(), blockLengths[tag.getBlock().id]);
+
+            // Sort terms by their UTF-8 bytes, so that lookup can compare bytes in place
+            var termBytes = new ArrayList<byte[]>();
+            dict.keySet().forEach((var term) -> termBytes.add(term.getBytes(StandardCharsets.UTF_8)));
+            termBytes.sort(Arrays::compareUnsigned);
+            for (var term : termBytes) {
+                var postings = dict.get(new String(term, StandardCharsets.UTF_8));
+                writer.startTerm(term, postings.size());
+                var position = 0;
+                for (var i = 0; i < postings.size(); i++) {
+                    var freq = postings.freqs.get(i);
+                    writer.addPosting(postings.ids.get(i), freq);
+                    for (var j = 0; j < freq; j++)
+                        writer.addPosition(postings.positions.get(position++));
+                }
+            }
+            writer.finish();
+        }
+    }
+
+    IndexWriter(String indexPath, BuildMode mode) throws IOException {
+        target = Paths.get(indexPath).toAbsolutePath();
+        this.mode = mode;
+        var outputs = new DataOutputStream[sectionPaths.length];
+        try {
+            for (var i = 0; i < sectionPaths.length; i++) {
+                sectionPaths[i] = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".part");
+                outputs[i] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(sectionPaths[i])));
+            }
+        } catch (IOException e) {
+            for (var out : outputs)
+                if (out != null) out.close();
+            deleteSections();
+            throw e;
+        }
+        strings = outputs[0];
+        nodes = outputs[1];
+        blocks = outputs[2];
+        terms = outputs[3];
+        postings = outputs[4];
+    }
+
+    // Nodes must be added in ID order
+    void addNode(Node node, long fingerprint) throws IOException {
+        nodes.writeInt(node.parent == null ? -1 : node.parent.id);
+        nodes.writeInt(node.level);
+        nodes.writeInt(addString(node.headline));
+        nodes.writeLong(fingerprint);
+        nodeParents.add(node.parent == null ? -1 : node.parent.id);
+        nNodes++;
+    }
+
+    // Blocks must be added in ID order, length is the number of terms extracted from the block
+    void addBlock(int nodeId, Block block, int length) throws IOException {
+        blocks.writeInt(nodeId);
+        blocks.writeByte(block.type.ordinal());
+        blocks.writeInt(addString(block.toString()));
+        blocks.writeInt(length);
+        blockNodes.add(nodeId);
+        nBlocks++;
+        totalLength += length;
+        if (length > 0) nIndexedBlocks++;
+    }
+
+    // Terms must be added in order of their UTF-8 bytes, each followed by its count of sorted postings.
+    // All nodes and blocks must be added before the first term.
+    void startTerm(byte[] term, int count) throws IOException {
+        endTerm();
+        termRef = addString(term);
+        termOffset = postings.size();
+        termCount = count;
+        remainingPostings = count;
+        prevId = 0;
+        inTerm = true;
+        if (rollupFreqs.length < nNodes)
+            rollupFreqs = new int[nNodes];
+    }
+
+    // Store gaps between sorted IDs as variable-length integers, each followed by freq positions
+    void addPosting(int id, int freq) throws IOException {
+        if (remainingPositions != 0)
+            throw new IllegalStateException("Positions of previous posting are incomplete.");
+        if (remainingPostings == 0 || id >= blockNodes.size())
+            throw new IllegalStateException("Posting does not belong to the current term or an added block.");
+        // The block's words are in its node and every ancestor
+        for (var node = blockNodes.get(id); node >= 0; node = nodeParents.get(node)) {
+            if (rollupFreqs[node] == 0) rollupNodes.add(node);
+            rollupFreqs[node] += freq;
+        }
+        writeVarInt(postings, id - prevId);
+        writeVarInt(postings, freq);
+        remainingPositions = freq;
+        prevPosition = 0;
+        prevId = id;
+        remainingPostings--;
+    }
+
+    // Positions in a block must be added in increasing order, they are stored as gaps too
+    void addPosition(int position) throws IOException {
+        writeVarInt(postings, position - prevPosition);
+        prevPosition = position;
+        remainingPositions--;
+    }
+
+    // Rollups of the current term follow its postings as (node ID gap, frequency in subtree) sorted by ID,
+    // then its term record is complete
+    private void endTerm() throws IOException {
+        if (!inTerm) return;
+        if (remainingPostings != 0 || remainingPositions != 0)
+            throw new IllegalStateException("Postings of previous term are incomplete.");
+        var ids = rollupNodes.toArray();
+        Arrays.sort(ids);
+        var rollupOffset = postings.size();
+        var prevNode = 0;
+        for (var node : ids) {
+            writeVarInt(postings, node - prevNode);
+            writeVarInt(postings, rollupFreqs[node]);
+            rollupFreqs[node] = 0;
+            prevNode = node;
+        }
+        rollupNodes.clear();
+
+        terms.writeInt(termRef);
+        terms.writeInt(termOffset);
+        terms.writeInt(termCount);
+        terms.writeInt(rollupOffset);
+        terms.writeInt(ids.length);
+        inTerm = false;
+        nTerms++;
+    }
+
+    // Concatenate sections after the header and replace the target file
+    void finish() throws IOException {
+        endTerm();
+        for (var out : new DataOutputStream[] {strings, nodes, blocks, terms, postings})
+            out.close();
+
+        // Lay out sections after the header
+        var offsets = new int[sectionPaths.length];
+        var offset = (long) IndexFile.HEADER_SIZE;
+        for (var i = 0; i < sectionPaths.length; i++) {
+            if (offset > Integer.MAX_VALUE)
+                throw new IOException("Index file exceeds 2 GB.");
+            offsets[i] = (int) offset;
+            offset += Files.size(sectionPaths[i]);
+        }
+
+        // Write to a temporary file first, the old index may still be mapped by searches
+        var temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(IndexFile.MAGIC);
+            out.writeInt(IndexFile.VERSION);
+            out.writeInt(mode.ordinal());
+            out.writeFloat(nIndexedBlocks == 0 ? 0 : (float) totalLength / nIndexedBlocks);
+            out.writeInt(nNodes);
+            out.writeInt(nBlocks);
+            out.writeInt(nTerms);
+            for (var sectionOffset : offsets)
+                out.writeInt(sectionOffset);
+            for (var section : sectionPaths)
+                Files.copy(section, out);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (var out : new DataOutputStream[] {strings, nodes, blocks, terms, postings})
+            out.close();
+        deleteSections();
+    }
+
+    private void deleteSections() throws IOException {
+        for (var section : sectionPaths)
+            if (section != null) Files.deleteIfExists(section);
+    }
+
+    // 7 bits per byte, the high bit is set on all bytes but the last
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private int addString(String str) throws IOException {
+        return str == null ? -1 : addString(str.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private int addString(byte[] bytes) throws IOException {
+        var ref = strings.size();
+        strings.writeInt(bytes.length);
+        strings.write(bytes);
+        return ref;
+    }
+}
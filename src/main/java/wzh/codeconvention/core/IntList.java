@@ -0,0 +1,28 @@
+package wzh.codeconvention.core;
+
+import java.util.Arrays;
+
+// Growable array of primitive ints
+class IntList {
+    private int[] data;
+    private int size = 0;
+
+    IntList() { this(8); }
+
+    IntList(int capacity) { data = new int[capacity]; }
+
+    void add(int value) {
+        if (size == data.length)
+            data = Arrays.copyOf(data, Math.max(8, size * 2));
+        data[size++] = value;
+    }
+
+    int get(int index) { return data[index]; }
+    void set(int index, int value) { data[index] = value; }
+    int size() { return size; }
+    boolean isEmpty() { return size == 0; }
+    int last() { return data[size - 1]; }
+    void clear() { size = 0; }
+
+    int[] toArray() { return Arrays.copyOf(data, size); }
+}
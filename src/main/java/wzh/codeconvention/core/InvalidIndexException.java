@@ -0,0 +1,7 @@
+package wzh.codeconvention.core;
+
+import java.io.IOException;
+
+public class InvalidIndexException extends IOException {
+    public InvalidIndexException(String message) { super(message); }
+}
@@ -0,0 +1,59 @@
+package wzh.codeconvention.core;
+
+import java.util.LinkedHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+class LruCache<K, V> {
+    private final int capacity;
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    // Access order makes the eldest entry the least recently used one
+    private final LinkedHashMap<K, V> map = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight = 0;
+    private long evictions = 0;
+
+    LruCache(int capacity) {
+        this(capacity, Long.MAX_VALUE, value -> 0);
+    }
+
+    // Besides the number of entries, the total weight of values is limited
+    LruCache(int capacity, long maxWeight, ToLongFunction<V> weigher) {
+        this.capacity = capacity;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    synchronized V get(K key) { return map.get(key); }
+
+    synchronized void put(K key, V value) {
+        // A value heavier than the whole cache would only evict everything else
+        var valueWeight = weigher.applyAsLong(value);
+        if (capacity <= 0 || valueWeight > maxWeight) return;
+        var old = map.put(key, value);
+        weight += valueWeight - (old == null ? 0 : weigher.applyAsLong(old));
+
+        // Evict least recently used entries, the new one is the most recently used
+        var iter = map.values().iterator();
+        while (map.size() > capacity || weight > maxWeight) {
+            weight -= weigher.applyAsLong(iter.next());
+            iter.remove();
+            evictions++;
+        }
+    }
+
+    synchronized void clear() {
+        map.clear();
+        weight = 0;
+    }
+
+    synchronized int size() { return map.size(); }
+
+    synchronized long weight() { return weight; }
+
+    // Number of entries removed to make room for others
+    synchronized long evictions() { return evictions; }
+
+    // Visits entries from the least to the most recently used one
+    synchronized void forEach(BiConsumer<K, V> action) { map.forEach(action); }
+}
@@ -0,0 +1,124 @@
+package wzh.codeconvention.core;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+// Splits a Markdown file into headline nodes and content blocks, reporting them as they are found
+class MarkdownParser {
+    // Regular expressions
+    private static final Pattern codeBlockEnterPattern = Pattern.compile("^`{3}.+");
+    private static final Pattern tablePattern = Pattern.compile("^\\|(.*\\|)+$");
+
+    interface Listener {
+        // A node is created, its headline is set except for the document root
+        void startNode(Node node) throws IOException;
+        // No more blocks will be added to the node
+        void endNode(Node node) throws IOException;
+        // No more lines will be added to the block
+        void endBlock(Node node, Block block) throws IOException;
+    }
+
+    static void parse(String textPath, Listener listener) throws IOException {
+        // Initialize reader
+        var reader = new BufferedReader(new FileReader(textPath));
+        // Initialize document tree
+        var root = new Node();
+        listener.startNode(root);
+        Node curNode = root, parent = null;
+        Block curBlock = null, openBlock = null; // a block is open until the next one or headline starts
+        // Ignore code block flag
+        var cType = ContentType.PLAIN_TEXT;
+
+        // Read file line by line
+        String line;
+        while ((line = reader.readLine()) != null) {
+            // Skip empty line
+            if (line.length() == 0) continue;
+            var lineWithFeed = String.format("%s\n", line);
+
+            // Deal with headline
+            if (line.matches("^#+.*")) { // a new headline
+                // Deal with document root
+                if (curNode.headline == null) { // current is the first line of document
+                    curNode.headline = line;
+                    curNode.level = countHeadlineLevel(line);
+                    continue;
+                }
+                if (openBlock != null) listener.endBlock(curNode, openBlock);
+                openBlock = null;
+                listener.endNode(curNode);
+
+                // Create new node and compute headline level
+                var newNode = new Node();
+                newNode.headline = line;
+                newNode.level = countHeadlineLevel(line);
+
+                // Update current and parent node reference according to level
+                if (newNode.level > curNode.level) { // a child encountered
+                    parent = curNode;
+                } else { // a parent encountered
+                    int levelDiff = curNode.level - newNode.level;
+                    for (var i = 0; i < levelDiff; i++)
+                        curNode = curNode.parent;
+                    parent = curNode.parent;
+                }
+                newNode.parent = parent;
+                listener.startNode(newNode);
+                curNode = newNode;
+                curBlock = null;
+
+                continue;
+            }
+
+            // Deal with code block
+            var codeBlockMatcher = codeBlockEnterPattern.matcher(line);
+            if (codeBlockMatcher.matches()) { // enter code block
+                cType = ContentType.CODE_BLOCK;
+                curBlock = new Block(cType);
+                curBlock.lines.append(lineWithFeed);
+                if (openBlock != null) listener.endBlock(curNode, openBlock);
+                openBlock = curBlock;
+                continue;
+            }
+            if (cType == ContentType.CODE_BLOCK) { // in code block
+                if (curBlock != null)
+                    curBlock.lines.append(lineWithFeed);
+                if (line.equals("```")) { // to exit block
+                    cType = ContentType.PLAIN_TEXT;
+                    curBlock = null; // don't now what the type of next block is
+                }
+                continue;
+            }
+
+            // Deal with tables
+            var tableMatcher = tablePattern.matcher(line);
+            if (tableMatcher.matches()) { // enter table
+                if (cType != ContentType.TABLE || curBlock == null) {
+                    cType = ContentType.TABLE;
+                    curBlock = new Block(cType);
+                    if (openBlock != null) listener.endBlock(curNode, openBlock);
+                    openBlock = curBlock;
+                }
+                curBlock.lines.append(lineWithFeed);
+                continue;
+            }
+
+            // Deal with plain text
+            cType = ContentType.PLAIN_TEXT;
+            curBlock = new Block(cType);
+            curBlock.text = line.trim();
+            if (openBlock != null) listener.endBlock(curNode, openBlock);
+            openBlock = curBlock;
+        }
+        reader.close();
+
+        if (openBlock != null) listener.endBlock(curNode, openBlock);
+        listener.endNode(curNode);
+    }
+
+    private static int countHeadlineLevel(String headline) {
+        return headline.split("#").length - 1;
+    }
+}
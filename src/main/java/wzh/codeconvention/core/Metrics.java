@@ -0,0 +1,29 @@
+package wzh.codeconvention.core;
+
+// Receives timings and counts from building and searching, implementations must be thread safe
+public interface Metrics {
+    // Discards everything, the default of a searcher
+    Metrics NOOP = new Metrics() {
+        @Override
+        public void recordTime(Phase phase, long nanos) {}
+
+        @Override
+        public void increment(Counter counter, long delta) {}
+    };
+
+    enum Phase {
+        // Building, annotation and extraction are timed for each paragraph
+        PARSE_MARKDOWN, ANNOTATE, EXTRACT_TERMS, MERGE_POSTINGS, WRITE_INDEX,
+        // Searching, posting lookup includes expansion and phrase matching
+        LOAD_INDEX, ANALYZE_QUERY, READ_POSTINGS, RANK, SEARCH
+    }
+
+    enum Counter {
+        BLOCKS, SENTENCES, TERMS, POSTINGS, // indexed
+        SEARCHES, MATCHED_BLOCKS
+    }
+
+    void recordTime(Phase phase, long nanos);
+
+    void increment(Counter counter, long delta);
+}
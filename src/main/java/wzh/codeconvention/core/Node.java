@@ -5,6 +5,7 @@ import java.util.ArrayList;
 
 public class Node implements Serializable {
     // Contents of current node
+    int id = -1; // position in document order
     String headline = null;
     int level = 0;
     ArrayList<Block> contents = new ArrayList<>();
@@ -12,6 +13,7 @@ public class Node implements Serializable {
     Node parent = null;
     ArrayList<Node> children = new ArrayList<>();
 
+    public int getId() { return id; }
     public String getHeadline() { return headline; }
     public int getLevel() { return level; }
     public ArrayList<Block> getContents() { return contents; }
@@ -0,0 +1,19 @@
+package wzh.codeconvention.core;
+
+// Postings of a term while building, positions of all blocks are concatenated in block order
+class PostingList {
+    final IntList ids = new IntList(), freqs = new IntList(), positions = new IntList();
+
+    // Blocks must be added in ID order, and positions in a block in increasing order
+    void add(int id, int position) {
+        if (ids.isEmpty() || ids.last() != id) {
+            ids.add(id);
+            freqs.add(1);
+        } else {
+            freqs.set(freqs.size() - 1, freqs.last() + 1);
+        }
+        positions.add(position);
+    }
+
+    int size() { return ids.size(); }
+}
@@ -0,0 +1,10 @@
+package wzh.codeconvention.core;
+
+// Finds postings of query words, an index file looks them up directly while a query session reuses them
+interface PostingLookup {
+    // Returns postings of the term, or null if the term is not indexed
+    Postings postings(String term, boolean withPositions);
+
+    // Returns postings of terms similar to one missing from the index without positions, or null if there is none
+    Postings expand(String lemma);
+}
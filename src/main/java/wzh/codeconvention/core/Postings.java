@@ -0,0 +1,22 @@
+package wzh.codeconvention.core;
+
+// Decoded postings of a term, sorted block IDs and how often the term occurs in each block
+class Postings {
+    final int[] ids;
+    final int[] freqs;
+    final int[] positions; // sorted positions in each block, concatenated in block order, null if not decoded
+    final int[] positionStarts; // index of the first position of each block
+
+    Postings(int[] ids, int[] freqs, int[] positions) {
+        this.ids = ids;
+        this.freqs = freqs;
+        this.positions = positions;
+        if (positions == null) {
+            positionStarts = null;
+            return;
+        }
+        positionStarts = new int[ids.length];
+        for (var i = 1; i < ids.length; i++)
+            positionStarts[i] = positionStarts[i - 1] + freqs[i - 1];
+    }
+}
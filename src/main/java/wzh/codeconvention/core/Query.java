@@ -0,0 +1,29 @@
+package wzh.codeconvention.core;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Lemmatized query, words quoted together form a phrase that must occur in this order
+class Query {
+    final List<String> lemmas;
+    final int[] phrases; // phrase number of each lemma, or -1 outside quotes
+
+    Query(List<String> lemmas, int[] phrases) {
+        this.lemmas = lemmas;
+        this.phrases = phrases;
+    }
+
+    // Queries with the same lemmas and phrases rank the same, however they were typed
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Query)) return false;
+        var other = (Query) o;
+        return lemmas.equals(other.lemmas) && Arrays.equals(phrases, other.phrases);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * lemmas.hashCode() + Arrays.hashCode(phrases);
+    }
+}
@@ -0,0 +1,201 @@
+package wzh.codeconvention.core;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+// Turns query strings into lemma lists with one long-lived pipeline shared by all callers
+class QueryAnalyzer {
+    static final int DEFAULT_CACHE_SIZE = 256;
+    private static final int BATCH_SIZE = 1024; // queries lemmatized in one pass
+    private static final Query EMPTY = new Query(Collections.emptyList(), new int[0]);
+
+    private static final Pattern spacePattern = Pattern.compile("\\s+");
+
+    // Query pipeline configuration
+    private static Properties props = new Properties();
+    private static Properties batchProps = new Properties();
+    private volatile StanfordCoreNLP pipeline = null;
+    private volatile StanfordCoreNLP batchPipeline = null; // only loaded for batches
+
+    // Normalized query to lemmas
+    private final LruCache<String, Query> cache;
+
+    static {
+        props.setProperty("annotators", "tokenize, ssplit, pos, lemma");
+        props.setProperty("ssplit.isOneSentence", "true");
+        // Batches put one query on each line
+        batchProps.setProperty("annotators", "tokenize, ssplit, pos, lemma");
+        batchProps.setProperty("ssplit.eolonly", "true");
+    }
+
+    QueryAnalyzer(boolean eager, int cacheSize) {
+        cache = new LruCache<>(cacheSize);
+        if (eager) getPipeline();
+    }
+
+    Query analyze(String input) {
+        var query = normalize(input);
+        if (query.isEmpty()) return EMPTY;
+        var cached = cache.get(query);
+        if (cached != null) return cached;
+
+        // Lemmatize the query, concurrent callers share the same pipeline
+        var quoteStarts = new IntList();
+        var quoteEnds = new IntList();
+        var anno = new Annotation(stripQuotes(query, quoteStarts, quoteEnds));
+        getPipeline().annotate(anno);
+        var tokens = new ArrayList<CoreLabel>();
+        for (var coreMap : anno.get(CoreAnnotations.SentencesAnnotation.class))
+            tokens.addAll(coreMap.get(CoreAnnotations.TokensAnnotation.class));
+
+        var result = toQuery(tokens, 0, quoteStarts, quoteEnds);
+        cache.put(query, result);
+        return result;
+    }
+
+    // Analyzes queries in input order. Queries not in the cache are lemmatized in bulk, one on each line of a
+    // text annotated in a single pass.
+    ArrayList<Query> analyzeAll(List<String> inputs) {
+        var result = new ArrayList<Query>(Collections.nCopies(inputs.size(), null));
+        var pending = new LinkedHashMap<String, IntList>(); // queries to lemmatize and where they occur
+        for (var i = 0; i < inputs.size(); i++) {
+            var query = normalize(inputs.get(i));
+            var cached = query.isEmpty() ? EMPTY : cache.get(query);
+            if (cached != null) result.set(i, cached);
+            else pending.computeIfAbsent(query, k -> new IntList()).add(i);
+        }
+
+        var queries = new ArrayList<>(pending.keySet());
+        for (var begin = 0; begin < queries.size(); begin += BATCH_SIZE) {
+            var batch = queries.subList(begin, Math.min(begin + BATCH_SIZE, queries.size()));
+            var analyzed = analyzeBatch(batch);
+            for (var i = 0; i < batch.size(); i++) {
+                cache.put(batch.get(i), analyzed.get(i));
+                var where = pending.get(batch.get(i));
+                for (var j = 0; j < where.size(); j++)
+                    result.set(where.get(j), analyzed.get(i));
+            }
+        }
+        return result;
+    }
+
+    // Lemmatizes normalized queries in one pass
+    private ArrayList<Query> analyzeBatch(List<String> queries) {
+        var text = new StringBuilder();
+        var lineStarts = new IntList();
+        var quoteStarts = new ArrayList<IntList>(queries.size());
+        var quoteEnds = new ArrayList<IntList>(queries.size());
+        for (var query : queries) {
+            var starts = new IntList();
+            var ends = new IntList();
+            lineStarts.add(text.length());
+            text.append(stripQuotes(query, starts, ends)).append('\n');
+            quoteStarts.add(starts);
+            quoteEnds.add(ends);
+        }
+        var anno = new Annotation(text.toString());
+        getBatchPipeline().annotate(anno);
+
+        // Sentences end at line breaks, so tokens of each query are together and in order
+        var lineTokens = new ArrayList<ArrayList<CoreLabel>>(queries.size());
+        for (var i = 0; i < queries.size(); i++)
+            lineTokens.add(new ArrayList<>());
+        var line = 0;
+        for (var coreMap : anno.get(CoreAnnotations.SentencesAnnotation.class)) {
+            for (var token : coreMap.get(CoreAnnotations.TokensAnnotation.class)) {
+                while (line + 1 < queries.size() && lineStarts.get(line + 1) <= token.beginPosition()) line++;
+                lineTokens.get(line).add(token);
+            }
+        }
+
+        var result = new ArrayList<Query>(queries.size());
+        for (var i = 0; i < queries.size(); i++)
+            result.add(toQuery(lineTokens.get(i), lineStarts.get(i), quoteStarts.get(i), quoteEnds.get(i)));
+        return result;
+    }
+
+    // Finds quoted ranges, an unclosed quote extends to the end. Quotes are replaced by spaces so that token
+    // offsets still refer to the query.
+    private static String stripQuotes(String query, IntList quoteStarts, IntList quoteEnds) {
+        var text = new StringBuilder(query);
+        for (var i = query.indexOf('"'); i >= 0; i = query.indexOf('"', i + 1)) {
+            text.setCharAt(i, ' ');
+            if (quoteStarts.size() == quoteEnds.size()) quoteStarts.add(i);
+            else quoteEnds.add(i);
+        }
+        if (quoteStarts.size() > quoteEnds.size()) quoteEnds.add(query.length());
+        return text.toString();
+    }
+
+    // Lemmas of the tokens of a query that starts at offset of the annotated text
+    private static Query toQuery(List<CoreLabel> tokens, int offset, IntList quoteStarts, IntList quoteEnds) {
+        var lemmas = new ArrayList<String>();
+        var phrases = new IntList();
+        var phrase = 0;
+        for (var i = 0; i < tokens.size(); i++) {
+            var token = tokens.get(i);
+            var end = operatorEnd(tokens, i);
+            if (end > i + 1) {
+                var operator = new StringBuilder();
+                for (var j = i; j < end; j++)
+                    operator.append(tokens.get(j).originalText());
+                lemmas.add(operator.toString());
+                i = end - 1;
+            } else {
+                lemmas.add(token.lemma().toLowerCase());
+            }
+            // Tokens are in order, so quoted ranges are passed one by one
+            var begin = token.beginPosition() - offset;
+            while (phrase < quoteEnds.size() && quoteEnds.get(phrase) <= begin) phrase++;
+            var quoted = phrase < quoteStarts.size() && quoteStarts.get(phrase) < begin;
+            phrases.add(quoted ? phrase : -1);
+        }
+        return new Query(Collections.unmodifiableList(lemmas), phrases.toArray());
+    }
+
+    // End of the longest run of adjacent tokens from begin that spell a code operator, such as "-" and ">" of "->",
+    // which code blocks index whole. Returns begin + 1 if there is none.
+    private static int operatorEnd(List<CoreLabel> tokens, int begin) {
+        var end = begin + 1;
+        var text = new StringBuilder(tokens.get(begin).originalText());
+        for (var i = begin + 1; i < tokens.size() && text.length() < CodeTokenizer.MAX_OPERATOR_LENGTH; i++) {
+            if (tokens.get(i).beginPosition() != tokens.get(i - 1).endPosition()) break;
+            text.append(tokens.get(i).originalText());
+            if (CodeTokenizer.isOperator(text.toString())) end = i + 1;
+        }
+        return end;
+    }
+
+    private StanfordCoreNLP getPipeline() {
+        var ppl = pipeline;
+        if (ppl == null) {
+            synchronized (this) {
+                ppl = pipeline;
+                if (ppl == null) // loading models is expensive, only do it once
+                    pipeline = ppl = new StanfordCoreNLP(props);
+            }
+        }
+        return ppl;
+    }
+
+    private StanfordCoreNLP getBatchPipeline() {
+        var ppl = batchPipeline;
+        if (ppl == null) {
+            synchronized (this) {
+                ppl = batchPipeline;
+                if (ppl == null)
+                    batchPipeline = ppl = new StanfordCoreNLP(batchProps);
+            }
+        }
+        return ppl;
+    }
+
+    static String normalize(String input) {
+        return spacePattern.matcher(input.trim()).replaceAll(" ");
+    }
+}
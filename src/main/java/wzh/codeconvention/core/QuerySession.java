@@ -0,0 +1,81 @@
+package wzh.codeconvention.core;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+
+/*
+ * Searches what has been typed so far for search-as-you-type. Postings of each word, and expansions of
+ * words missing from the index, are kept between searches, so typing one more word only looks up that
+ * word and merges it with the postings already at hand. Lookups are dropped once the searcher loads
+ * another index. Interrupting the searching thread cancels the search before its next lookup.
+ */
+public class QuerySession {
+    static final int CACHE_SIZE = 256;
+    private static final Postings MISSING = new Postings(new int[0], new int[0], null); // cached null
+
+    private final Searcher searcher;
+    private volatile Lookup lookup = null; // of the index searched last
+
+    QuerySession(Searcher searcher) {
+        this.searcher = searcher;
+    }
+
+    // Returns at most k best results, throws CancellationException if the thread is interrupted
+    public ArrayList<SearchResult> search(String input, int k) throws IndexNotLoadedException {
+        var file = searcher.getFile();
+        if (k <= 0) return new ArrayList<>();
+        var metrics = searcher.getMetrics();
+        var start = System.nanoTime();
+        var query = searcher.analyze(input);
+        metrics.recordTime(Metrics.Phase.ANALYZE_QUERY, System.nanoTime() - start);
+        var result = search(file, query, k, metrics);
+        metrics.increment(Metrics.Counter.SEARCHES, 1);
+        metrics.recordTime(Metrics.Phase.SEARCH, System.nanoTime() - start);
+        return result;
+    }
+
+    ArrayList<SearchResult> search(IndexFile file, Query query, int k, Metrics metrics) {
+        var current = lookup;
+        if (current == null || current.file != file)
+            lookup = current = new Lookup(file);
+        return Searcher.search(file, current, query, k, null, searcher.getScorer(), metrics);
+    }
+
+    // Postings looked up in one index. Positions are always decoded, so one lookup serves words and phrases.
+    private static class Lookup implements PostingLookup {
+        final IndexFile file;
+        private final LruCache<String, Postings> exact = new LruCache<>(CACHE_SIZE);
+        private final LruCache<String, Postings> expanded = new LruCache<>(CACHE_SIZE);
+
+        Lookup(IndexFile file) {
+            this.file = file;
+        }
+
+        @Override
+        public Postings postings(String term, boolean withPositions) {
+            checkCancelled();
+            var list = exact.get(term);
+            if (list == null) {
+                list = file.postings(term, true);
+                exact.put(term, list == null ? MISSING : list);
+            }
+            return list == MISSING ? null : list;
+        }
+
+        @Override
+        public Postings expand(String lemma) {
+            checkCancelled();
+            var list = expanded.get(lemma);
+            if (list == null) {
+                list = file.expand(lemma);
+                expanded.put(lemma, list == null ? MISSING : list);
+            }
+            return list == MISSING ? null : list;
+        }
+
+        private static void checkCancelled() {
+            if (Thread.currentThread().isInterrupted())
+                throw new CancellationException("Search is cancelled.");
+        }
+    }
+}
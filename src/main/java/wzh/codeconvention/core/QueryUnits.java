@@ -0,0 +1,66 @@
+package wzh.codeconvention.core;
+
+import java.util.ArrayList;
+
+// Postings of a query split into units in query order, each distinct word outside quotes and each phrase
+class QueryUnits {
+    final ArrayList<Postings> postings = new ArrayList<>();
+    final IntList words = new IntList(); // number of words in the unit
+    final IntList counts = new IntList(); // number of times the unit's words occur in the query
+    final IntList expanded = new IntList();
+    final IntList starts = new IntList(); // index of the unit's first word in the query, the same in every index
+
+    static QueryUnits find(PostingLookup lookup, Query query) {
+        // Positions are only needed to relate several words
+        var lemmas = query.lemmas;
+        var withPositions = lemmas.size() > 1;
+        var units = new QueryUnits();
+        for (var i = 0; i < lemmas.size(); i++) {
+            if (query.phrases[i] >= 0) {
+                // Phrase words must be indexed, missing ones such as stop words match any token
+                var end = i;
+                var parts = new ArrayList<Postings>();
+                var offsets = new IntList();
+                for (; end < lemmas.size() && query.phrases[end] == query.phrases[i]; end++) {
+                    var list = lookup.postings(lemmas.get(end), true);
+                    if (list == null) continue;
+                    parts.add(list);
+                    offsets.add(end - i);
+                }
+                if (!parts.isEmpty())
+                    units.add(Searcher.matchPhrase(parts, offsets), parts.size(), parts.size(), false, i);
+                i = end - 1;
+                continue;
+            }
+
+            // Count occurrences of each distinct lemma outside quotes
+            var lemma = lemmas.get(i);
+            var count = 0;
+            for (var j = 0; j < lemmas.size(); j++) {
+                if (query.phrases[j] >= 0 || !lemmas.get(j).equals(lemma)) continue;
+                if (j < i) break; // counted at its first occurrence
+                count++;
+            }
+            if (count == 0) continue;
+
+            // Look up postings of the lemma, one missing from the index is expanded to similar terms
+            var list = lookup.postings(lemma, withPositions);
+            var isExpanded = list == null;
+            if (isExpanded)
+                list = lookup.expand(lemma);
+            if (list == null) continue;
+            units.add(list, 1, count, isExpanded, i);
+        }
+        return units;
+    }
+
+    private void add(Postings list, int nWords, int count, boolean isExpanded, int start) {
+        postings.add(list);
+        words.add(nWords);
+        counts.add(count);
+        expanded.add(isExpanded ? 1 : 0);
+        starts.add(start);
+    }
+
+    int size() { return postings.size(); }
+}
@@ -0,0 +1,74 @@
+package wzh.codeconvention.core;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Ranked results of recent searches, keyed by the lemmatized query and the number of results. An
+ * entry remembers the index and scorer it was ranked with and is only returned while the searcher
+ * still uses both, so loading or building an index invalidates the whole cache at once. The number
+ * of entries and the total number of results held are limited.
+ */
+class ResultCache {
+    static final int DEFAULT_MAX_ENTRIES = 256;
+    static final long DEFAULT_MAX_RESULTS = 1 << 16;
+
+    private final LruCache<Key, Entry> cache;
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+    ResultCache(int maxEntries, long maxResults) {
+        // An empty result list still costs an entry
+        cache = new LruCache<>(maxEntries, maxResults, entry -> entry.results.size() + 1);
+    }
+
+    // Returns a copy of the cached results, or null if they are missing or stale
+    ArrayList<SearchResult> get(IndexFile file, Scorer scorer, Query query, int k) {
+        var entry = cache.get(new Key(query, k));
+        var fresh = entry != null && entry.file == file && entry.scorer == scorer;
+        (fresh ? hits : misses).incrementAndGet();
+        return fresh ? new ArrayList<>(entry.results) : null;
+    }
+
+    void put(IndexFile file, Scorer scorer, Query query, int k, ArrayList<SearchResult> results) {
+        cache.put(new Key(query, k), new Entry(file, scorer, new ArrayList<>(results)));
+    }
+
+    // Drops entries of a replaced index, they could never be returned again
+    void clear() { cache.clear(); }
+
+    CacheStats stats() {
+        return new CacheStats(hits.get(), misses.get(), cache.evictions(), cache.size());
+    }
+
+    private static class Key {
+        final Query query;
+        final int k;
+
+        Key(Query query, int k) {
+            this.query = query;
+            this.k = k;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            var other = (Key) o;
+            return k == other.k && query.equals(other.query);
+        }
+
+        @Override
+        public int hashCode() { return 31 * query.hashCode() + k; }
+    }
+
+    private static class Entry {
+        final IndexFile file;
+        final Scorer scorer;
+        final ArrayList<SearchResult> results;
+
+        Entry(IndexFile file, Scorer scorer, ArrayList<SearchResult> results) {
+            this.file = file;
+            this.scorer = scorer;
+            this.results = results;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package wzh.codeconvention.core;
+
+// Scores blocks matching a query, the score of a block is summed over the query words it contains
+public interface Scorer {
+    // Ranks by number of matched words and matches alone, as searches did before scores were added
+    Scorer MATCH_COUNT = (termFreq, docFreq, blockLength, stats) -> 0;
+
+    // Score of a word occurring termFreq times in a block of blockLength terms, docFreq is the number
+    // of blocks containing it
+    double score(int termFreq, int docFreq, int blockLength, IndexStats stats);
+
+    // Bonus for two query words found distance tokens apart in a block, nothing by default
+    default double proximity(int distance) { return 0; }
+
+    // Factor applied to scores of words in blocks of the given type, so that prose can outrank code
+    default double fieldWeight(ContentType type) { return 1; }
+
+    // Statistics of the whole index
+    interface IndexStats {
+        int numBlocks(); // blocks with at least one term
+        double averageLength();
+    }
+}
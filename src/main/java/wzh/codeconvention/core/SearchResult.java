@@ -3,14 +3,24 @@ package wzh.codeconvention.core;
 public class SearchResult implements Comparable<SearchResult> {
     ContentTag tag;
     int nWords, nMatches;
+    int nExpanded = 0; // words only matched by prefix or fuzzy expansion
+    double score = 0; // given by the searcher's scorer, ranks before word counts
+    int length; // length of tag text, cached so that comparison allocates nothing
+    String source = null; // name of the document in a corpus
 
-    SearchResult(ContentTag tag, int nWords, int nMatches) {
+    SearchResult(ContentTag tag, int nWords, int nMatches, int length) {
         this.tag = tag;
         this.nWords = nWords;
         this.nMatches = nMatches;
+        this.length = length;
     }
 
     public ContentTag getTag() { return tag; }
+    public int getNumWords() { return nWords; }
+    public int getNumMatches() { return nMatches; }
+    public int getNumExpanded() { return nExpanded; }
+    public double getScore() { return score; }
+    public String getSource() { return source; }
 
     @Override
     public String toString() {
@@ -19,11 +29,21 @@ public class SearchResult implements Comparable<SearchResult> {
 
     @Override
     public int compareTo(SearchResult o) {
-        if (nWords != o.nWords)
+        if (score != o.score)
+            return Double.compare(o.score, score);
+        else if (nWords != o.nWords)
             return o.nWords - nWords;
+        else if (nExpanded != o.nExpanded) // exact words rank higher
+            return nExpanded - o.nExpanded;
         else if (nMatches != o.nMatches)
             return o.nMatches - nMatches;
+        else if (length != o.length)
+            return length - o.length;
+        else if (tag.getBlock().id != o.tag.getBlock().id) // keep document order
+            return tag.getBlock().id - o.tag.getBlock().id;
+        else if (source == null || o.source == null)
+            return source == null ? (o.source == null ? 0 : -1) : 1;
         else
-            return tag.toString().length() - o.tag.toString().length();
+            return source.compareTo(o.source);
     }
-}
\ No newline at end of file
+}
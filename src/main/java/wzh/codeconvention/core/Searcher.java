@@ -1,15 +1,22 @@
 package wzh.codeconvention.core;
 
 import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.pipeline.Annotation;
 import edu.stanford.nlp.pipeline.StanfordCoreNLP;
-import edu.stanford.nlp.trees.Constituent;
-import edu.stanford.nlp.trees.LabeledScoredConstituentFactory;
+import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.trees.TreeCoreAnnotations;
 
 import java.io.*;
+import java.nio.file.NoSuchFileException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
 public class Searcher {
 
@@ -22,9 +29,13 @@ public class Searcher {
 
     // Regular expressions
     private static final Pattern codePattern = Pattern.compile("`(.*?)`");
-    private static final Pattern codeBlockEnterPattern = Pattern.compile("^`{3}.+");
-    private static final Pattern tablePattern = Pattern.compile("^\\|(.*\\|)+$");
-    private static final Pattern numberPattern = Pattern.compile("[0-9]+");
+
+    // Part of speech that may appear in a noun phrase chunk
+    private static final String[] chunkPos = {
+            "DT", "PDT", "PRP$", "POS", "CD", "JJ", "JJR", "JJS", "NN", "NNS", "NNP", "NNPS", "FW"
+    };
+    private static HashSet<String> chunkPosSet = new HashSet<>();
+    private static final Set<String> determinerPosSet = Set.of("DT", "PDT", "PRP$");
 
     // Skipped part of speech
     private static final String[] skippedPos = {
@@ -34,270 +45,776 @@ public class Searcher {
 
     // CoreNLP pipeline configuration
     private static Properties props = new Properties();
-    private StanfordCoreNLP pipeline;
-
-    // Index file
-    private IndexFile file = null;
+    private static Properties chunkProps = new Properties();
+    private StanfordCoreNLP pipeline = null; // only loaded when building, searching does not need the parser
+    private StanfordCoreNLP chunkPipeline = null;
+    private QueryAnalyzer analyzer;
+
+    // Index building configuration
+    private static final int BUILD_BATCH_SIZE = 32;
+    private volatile int buildThreads = Runtime.getRuntime().availableProcessors();
+    private volatile BuildMode buildMode = BuildMode.PARSE;
+    private volatile AnnotationCache annotationCache = null;
+    private String annotationCachePath = null;
+    private int annotationCacheEntries = 0;
+
+    // Ranking of search results
+    static final double EXPANSION_WEIGHT = 0.5; // of words only matched by prefix or fuzzy expansion
+    private volatile Scorer scorer = new Bm25Scorer();
+    private volatile ResultCache resultCache =
+            new ResultCache(ResultCache.DEFAULT_MAX_ENTRIES, ResultCache.DEFAULT_MAX_RESULTS);
+
+    // Timings and counts of building and searching
+    private volatile Metrics metrics = Metrics.NOOP;
+
+    // Index file, replaced as a whole so that searches always see a complete index
+    private volatile IndexFile file = null;
 
     static {
         // Add Java keywords to set
         keywordSet.addAll(Arrays.asList(JAVA_KEYWORDS.split(" ")));
         // Add skipped POS to set
         skippedPosSet.addAll(Arrays.asList(skippedPos));
+        chunkPosSet.addAll(Arrays.asList(chunkPos));
         // Set up NLP pipeline
         props.setProperty("annotators", "tokenize, ssplit, pos, parse, lemma");
         props.setProperty("parse.nthreads", "4");
+        // Chunking only needs POS tags
+        chunkProps.setProperty("annotators", "tokenize, ssplit, pos, lemma");
     }
 
     public static void main(String[] args) {
         var searcher = new Searcher();
+        // Print where building and searching spend their time
+        var stats = Arrays.asList(args).contains("--stats") ? new InMemoryMetrics() : null;
+        if (stats != null) searcher.setMetrics(stats);
         try {
+            searcher.setAnnotationCache("google.cache", 1 << 16);
             searcher.build("google.md", "google.idx");
+            System.out.printf("Annotation cache: %d hits, %d misses%n",
+                    searcher.getAnnotationCacheHits(), searcher.getAnnotationCacheMisses());
             searcher.load("google.idx");
             var result = searcher.search("try catch");
             result.forEach(System.out::println);
+            if (stats != null) {
+                System.out.print(stats.report());
+                System.out.printf("Result cache: %s%n", searcher.getResultCacheStats());
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
     public Searcher() {
-        pipeline = new StanfordCoreNLP(props);
+        this(false);
+    }
+
+    public Searcher(boolean eagerQueryPipeline) {
+        this(eagerQueryPipeline, QueryAnalyzer.DEFAULT_CACHE_SIZE);
+    }
+
+    public Searcher(boolean eagerQueryPipeline, int queryCacheSize) {
+        analyzer = new QueryAnalyzer(eagerQueryPipeline, queryCacheSize);
+    }
+
+    public Metrics getMetrics() { return metrics; }
+
+    public void setMetrics(Metrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    public int getBuildThreads() { return buildThreads; }
+
+    public void setBuildThreads(int buildThreads) {
+        if (buildThreads < 1)
+            throw new IllegalArgumentException("Number of build threads must be positive.");
+        this.buildThreads = buildThreads;
+    }
+
+    public BuildMode getBuildMode() { return buildMode; }
+
+    // Chunk mode skips the constituency parser, which takes most of the building time
+    public synchronized void setBuildMode(BuildMode buildMode) throws IOException {
+        if (buildMode == this.buildMode) return;
+        this.buildMode = buildMode;
+        // Cached terms of the other mode do not apply
+        if (annotationCachePath != null)
+            setAnnotationCache(annotationCachePath, annotationCacheEntries);
+    }
+
+    // Keeps terms of up to maxEntries paragraphs in a cache file shared by builds, null path disables it
+    public synchronized void setAnnotationCache(String cachePath, int maxEntries) throws IOException {
+        annotationCachePath = cachePath;
+        annotationCacheEntries = maxEntries;
+        if (cachePath == null) {
+            annotationCache = null;
+            return;
+        }
+        // Anything changing the extracted terms invalidates the cache
+        var settings = String.join("\n", props.getProperty("annotators"), JAVA_KEYWORDS,
+                String.join(" ", skippedPos));
+        if (buildMode == BuildMode.CHUNK)
+            settings = String.join("\n", chunkProps.getProperty("annotators"), JAVA_KEYWORDS,
+                    String.join(" ", skippedPos), String.join(" ", chunkPos));
+        annotationCache = new AnnotationCache(cachePath, maxEntries, settings);
+    }
+
+    // Hit and miss counts of the annotation cache in the last build
+    public long getAnnotationCacheHits() {
+        var cache = annotationCache;
+        return cache == null ? 0 : cache.getHits();
+    }
+
+    public long getAnnotationCacheMisses() {
+        var cache = annotationCache;
+        return cache == null ? 0 : cache.getMisses();
     }
 
     public void build(String textPath, String indexPath) throws IOException {
+        build(textPath, indexPath, false);
+    }
+
+    public void build(String textPath, String indexPath, boolean incremental) throws IOException {
+        build(textPath, indexPath, incremental, BuildProgress.NONE);
+    }
+
+    // In incremental mode, sections unchanged since the index at indexPath was built reuse its terms. Interrupting
+    // the calling thread cancels the build with an InterruptedIOException, leaving any existing index in place.
+    public void build(String textPath, String indexPath, boolean incremental, BuildProgress progress)
+            throws IOException {
         // Initialize dictionary
-        file = new IndexFile();
-        var setDict = new HashMap<String, TreeSet<ContentTag>>();
-
-        // Initialize reader
-        var reader = new BufferedReader(new FileReader(textPath));
-        // Initialize document tree
-        file.root = new Node();
-        Node curNode = file.root, parent = null;
-        Block curBlock = null;
-        // Ignore code block flag
-        var cType = ContentType.PLAIN_TEXT;
-
-        // Read file line by line
-        String line;
-        while ((line = reader.readLine()) != null) {
-            // Skip empty line
-            if (line.length() == 0) continue;
-            var lineWithFeed = String.format("%s\n", line);
-
-            // Deal with headline
-            if (line.matches("^#+.*")) { // a new headline
-                // Deal with document root
-                if (curNode.headline == null) { // current is the first line of document
-                    curNode.headline = line;
-                    curNode.level = countHeadlineLevel(line);
-                    continue;
-                }
+        var dict = new HashMap<String, PostingList>();
+        var mode = buildMode;
+        var metrics = this.metrics;
+
+        // Build document tree, terms of each block are indexed by block ID
+        var start = System.nanoTime();
+        var doc = Document.parse(textPath);
+        metrics.recordTime(Metrics.Phase.PARSE_MARKDOWN, System.nanoTime() - start);
+        metrics.increment(Metrics.Counter.BLOCKS, doc.tags.size());
+        var blockTerms = new ArrayList<TermList>(Collections.nCopies(doc.tags.size(), null));
+        if (incremental)
+            reuseTerms(doc, indexPath, mode, blockTerms);
+
+        // Collect plain text still to be annotated, code blocks and tables are tokenized directly
+        var plainTags = new ArrayList<ContentTag>();
+        for (var tag : doc.tags) {
+            var block = tag.getBlock();
+            if (block.type != ContentType.PLAIN_TEXT)
+                blockTerms.set(block.id, CodeTokenizer.tokenize(block));
+            else if (blockTerms.get(block.id) == null)
+                plainTags.add(tag);
+        }
+        // Annotate plain text in parallel, keeping the document order
+        var cache = annotationCache;
+        if (cache != null) cache.resetCounters();
+        ArrayList<TermList> termLists;
+        var executor = newBuildExecutor();
+        try {
+            termLists = annotateAll(executor, plainTags, mode, cache, progress);
+        } finally {
+            executor.shutdownNow();
+        }
+        if (cache != null) cache.save();
+        for (var i = 0; i < plainTags.size(); i++)
+            blockTerms.set(plainTags.get(i).getBlock().id, termLists.get(i));
+
+        // Merge terms in document order, so postings are sorted block IDs and the output is
+        // identical to a serial build
+        start = System.nanoTime();
+        var blockLengths = new int[blockTerms.size()];
+        for (var id = 0; id < blockTerms.size(); id++) {
+            var terms = blockTerms.get(id);
+            if (terms == null) continue;
+            blockLengths[id] = terms.size();
+            addPostings(dict, id, terms);
+            metrics.increment(Metrics.Counter.TERMS, terms.size());
+        }
+        metrics.recordTime(Metrics.Phase.MERGE_POSTINGS, System.nanoTime() - start);
+        long nPostings = 0;
+        for (var postings : dict.values())
+            nPostings += postings.size();
+        metrics.increment(Metrics.Counter.POSTINGS, nPostings);
+
+        // Write the index file and map it for searching
+        if (Thread.currentThread().isInterrupted())
+            throw new InterruptedIOException("Index building is interrupted.");
+        start = System.nanoTime();
+        IndexWriter.write(indexPath, mode, doc, blockLengths, dict);
+        metrics.recordTime(Metrics.Phase.WRITE_INDEX, System.nanoTime() - start);
+        load(indexPath);
+    }
 
-                // Create new node and compute headline level
-                var newNode = new Node();
-                newNode.headline = line;
-                newNode.level = countHeadlineLevel(line);
-
-                // Update current and parent node reference according to level
-                if (newNode.level > curNode.level) { // a child encountered
-                    parent = curNode;
-                } else { // a parent encountered
-                    int levelDiff = curNode.level - newNode.level;
-                    for (var i = 0; i < levelDiff; i++)
-                        curNode = curNode.parent;
-                    parent = curNode.parent;
-                }
-                newNode.parent = parent;
-                if (parent != null)
-                    parent.children.add(newNode);
-                curNode = newNode;
-                curBlock = null;
+    // Builds an index without holding the document or dictionary in memory, postings beyond
+    // memoryBudget bytes are spilled to temporary files next to the index. The index is not loaded,
+    // call load to search it.
+    public void buildStreaming(String textPath, String indexPath, long memoryBudget) throws IOException {
+        if (memoryBudget <= 0)
+            throw new IllegalArgumentException("Memory budget must be positive.");
+        var cache = annotationCache;
+        if (cache != null) cache.resetCounters();
+        StreamingBuilder.build(this, textPath, indexPath, buildMode, memoryBudget, BUILD_BATCH_SIZE * buildThreads,
+                cache);
+        if (cache != null) cache.save();
+    }
 
-                continue;
-            }
+    // Blocks must be added in ID order
+    static void addPostings(Map<String, PostingList> dict, int id, TermList terms) {
+        for (var i = 0; i < terms.size(); i++)
+            dict.computeIfAbsent(terms.term(i), k -> new PostingList()).add(id, terms.position(i));
+    }
 
-            // Deal with code block
-            var codeBlockMatcher = codeBlockEnterPattern.matcher(line);
-            if (codeBlockMatcher.matches()) { // enter code block
-                cType = ContentType.CODE_BLOCK;
-                curBlock = new Block(cType);
-                curBlock.lines.append(lineWithFeed);
-                curNode.contents.add(curBlock);
-                continue;
+    // Recover terms of blocks in sections whose fingerprint is found in the previous index
+    private void reuseTerms(Document doc, String indexPath, BuildMode mode, ArrayList<TermList> blockTerms)
+            throws IOException {
+        IndexFile prev;
+        try {
+            prev = IndexFile.load(indexPath);
+        } catch (NoSuchFileException | InvalidIndexException e) {
+            return; // nothing to reuse, build from scratch
+        }
+        if (prev.mode != mode) return; // terms were extracted differently
+
+        // Group previous sections by fingerprint, sections with equal fingerprints match in order
+        var prevSections = new HashMap<Long, ArrayDeque<Node>>();
+        for (var node : prev.nodes)
+            prevSections.computeIfAbsent(prev.fingerprints[node.id], k -> new ArrayDeque<>()).add(node);
+
+        // Map blocks of unchanged sections to their new IDs, blocks of removed sections are dropped
+        var blockMap = new int[prev.tags.length];
+        Arrays.fill(blockMap, -1);
+        for (var node : doc.nodes) {
+            var candidates = prevSections.get(Document.fingerprint(node));
+            if (candidates == null || candidates.isEmpty()) continue;
+            var prevNode = candidates.poll();
+            for (var i = 0; i < node.contents.size(); i++) {
+                // Code blocks and tables are cheap to tokenize again
+                var block = node.contents.get(i);
+                if (block.type != ContentType.PLAIN_TEXT) continue;
+                blockMap[prevNode.contents.get(i).id] = block.id;
+                blockTerms.set(block.id, new TermList());
             }
-            if (cType == ContentType.CODE_BLOCK) { // in code block
-                if (curBlock != null)
-                    curBlock.lines.append(lineWithFeed);
-                if (line.equals("```")) { // to exit block
-                    cType = ContentType.PLAIN_TEXT;
-                    curBlock = null; // don't now what the type of next block is
-                }
-                continue;
+        }
+
+        // Invert previous postings back to terms of each reused block, one for each position
+        for (var i = 0; i < prev.numTerms(); i++) {
+            String term = null;
+            var postings = prev.postings(i, true);
+            for (var j = 0; j < postings.ids.length; j++) {
+                var id = blockMap[postings.ids[j]];
+                if (id < 0) continue;
+                if (term == null) term = prev.term(i);
+                for (var n = 0; n < postings.freqs[j]; n++)
+                    blockTerms.get(id).add(term, postings.positions[postings.positionStarts[j] + n]);
             }
+        }
+        for (var id = 0; id < blockTerms.size(); id++) {
+            if (blockTerms.get(id) != null)
+                blockTerms.set(id, blockTerms.get(id).sorted());
+        }
+    }
+
+    // Threads annotating text during one build, the builder shuts them down when it is done
+    ExecutorService newBuildExecutor() { return Executors.newFixedThreadPool(buildThreads); }
 
-            // Deal with tables
-            var tableMatcher = tablePattern.matcher(line);
-            if (tableMatcher.matches()) { // enter table
-                if (cType != ContentType.TABLE || curBlock == null) {
-                    cType = ContentType.TABLE;
-                    curBlock = new Block(cType);
-                    curNode.contents.add(curBlock);
+    ArrayList<TermList> annotateAll(ExecutorService executor, ArrayList<ContentTag> tags, BuildMode mode,
+                                    AnnotationCache cache) throws IOException {
+        return annotateAll(executor, tags, mode, cache, BuildProgress.NONE);
+    }
+
+    ArrayList<TermList> annotateAll(ExecutorService executor, ArrayList<ContentTag> tags, BuildMode mode,
+                                    AnnotationCache cache, BuildProgress progress) throws IOException {
+        // Split blocks into batches, one task for each
+        var done = new AtomicInteger();
+        var futures = new ArrayList<Future<ArrayList<TermList>>>();
+        for (var begin = 0; begin < tags.size(); begin += BUILD_BATCH_SIZE) {
+            var batch = tags.subList(begin, Math.min(begin + BUILD_BATCH_SIZE, tags.size()));
+            futures.add(executor.submit(() -> {
+                var batchTerms = new ArrayList<TermList>(batch.size());
+                for (var tag : batch) {
+                    if (Thread.interrupted()) throw new InterruptedException(); // build is cancelled
+                    var text = tag.getBlock().text;
+                    // Paragraphs seen in earlier builds skip NLP entirely
+                    var terms = cache == null ? null : cache.get(text);
+                    if (terms == null) {
+                        terms = annotate(text, mode);
+                        if (cache != null) cache.put(text, terms);
+                    }
+                    batchTerms.add(terms);
+                    progress.update(done.incrementAndGet(), tags.size());
                 }
-                curBlock.lines.append(lineWithFeed);
-                continue;
-            }
+                return batchTerms;
+            }));
+        }
 
-            // Deal with plain text
-            cType = ContentType.PLAIN_TEXT;
-            curBlock = new Block(cType);
-            curBlock.text = line.trim();
-            curNode.contents.add(curBlock);
-            annotate(curNode, curBlock, setDict);
+        // Collect results in submission order, the executor outlives this call so pending tasks are cancelled
+        var termLists = new ArrayList<TermList>(tags.size());
+        try {
+            for (var future : futures)
+                termLists.addAll(future.get());
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Index building is interrupted.");
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new IOException("Error annotating text.", e.getCause());
         }
+        return termLists;
+    }
 
-        // Transform set to array
-        file.dict = new HashMap<>();
-        setDict.forEach((var str, var set) -> file.dict.put(str, new ArrayList<>(set)));
-
-        // Serialize the object and store as a file
-        var fileOut = new FileOutputStream(indexPath);
-        var objOut = new ObjectOutputStream(fileOut);
-        objOut.writeObject(file);
-        objOut.close();
-        fileOut.close();
-    }
-
-    private void annotate(Node node, Block block, HashMap<String, TreeSet<ContentTag>> setDict) {
-        String text = block.text;
-
-        // Try to extract some java keywords
-        var codeMatcher = codePattern.matcher(text);
-        var matchRes = codeMatcher.results();
-        matchRes.forEach((var res) -> {
-            var code = res.group().replace("`", "");
-            if (keywordSet.contains(code)) {
-                if (!setDict.containsKey(code))
-                    setDict.put(code, new TreeSet<>());
-                setDict.get(code).add(new ContentTag(node, block));
-            }
-        });
+    // Positions of terms are offsets of their tokens in the whole text
+    private TermList annotate(String text, BuildMode mode) {
+        var metrics = this.metrics;
 
         // Annotate text using CoreNLP
+        var start = System.nanoTime();
         var annotation = new Annotation(text);
-        pipeline.annotate(annotation);
+        (mode == BuildMode.CHUNK ? getChunkPipeline() : getPipeline()).annotate(annotation);
+        var annotated = System.nanoTime();
+        metrics.recordTime(Metrics.Phase.ANNOTATE, annotated - start);
+        metrics.increment(Metrics.Counter.SENTENCES,
+                annotation.get(CoreAnnotations.SentencesAnnotation.class).size());
+        var terms = extractTerms(annotation, mode);
+        metrics.recordTime(Metrics.Phase.EXTRACT_TERMS, System.nanoTime() - annotated);
+        return terms;
+    }
 
+    // Terms of an annotated text sorted by position
+    static TermList extractTerms(Annotation annotation, BuildMode mode) {
+        var terms = new TermList();
+        addCodeKeywords(annotation, terms);
+
+        var base = 0; // offset of the first token of sentence
         for (var coreMap : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
-            // Get constituent tree of this sentence
-            var tree = coreMap.get(TreeCoreAnnotations.TreeAnnotation.class);
-            var constituents = tree.constituents(new LabeledScoredConstituentFactory());
             var tokenList = coreMap.get(CoreAnnotations.TokensAnnotation.class);
+            if (mode == BuildMode.CHUNK) {
+                addChunkLemmas(tokenList, base, terms);
+            } else {
+                // Extract lemma from noun phrases not containing other noun phrases
+                var tree = coreMap.get(TreeCoreAnnotations.TreeAnnotation.class);
+                new LeafPhraseCollector(tokenList, base, terms).visit(tree);
+            }
+            base += tokenList.size();
+        } // end sentence loop
+        return terms.sorted();
+    }
 
-            // Extract noun phrases needed
-            var nounPhrases = new ArrayList<Constituent>();
-            for (var cnst : constituents) {
-                if (cnst.label().toString().equals("NP"))
-                    nounPhrases.add(cnst);
+    // Try to extract some java keywords, at the token where the code starts
+    static void addCodeKeywords(Annotation annotation, TermList terms) {
+        var allTokens = annotation.get(CoreAnnotations.TokensAnnotation.class);
+        var codeMatcher = codePattern.matcher(annotation.get(CoreAnnotations.TextAnnotation.class));
+        while (codeMatcher.find()) {
+            var code = codeMatcher.group(1);
+            if (keywordSet.contains(code))
+                terms.add(code, findToken(allTokens, codeMatcher.start(1)));
+        }
+    }
+
+    // Returns offset of the first token starting at or after given character
+    private static int findToken(List<CoreLabel> tokens, int begin) {
+        int low = 0, high = tokens.size();
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (tokens.get(mid).beginPosition() < begin) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    // Noun phrases are maximal runs of chunk tags, cut after their last noun. A determiner
+    // following a noun starts another phrase.
+    private static void addChunkLemmas(List<CoreLabel> tokenList, int base, TermList terms) {
+        int begin = -1, nounEnd = -1;
+        for (var i = 0; i <= tokenList.size(); i++) {
+            String pos = null; // end of sentence
+            if (i < tokenList.size())
+                pos = tokenList.get(i).get(CoreAnnotations.PartOfSpeechAnnotation.class);
+            var inChunk = pos != null && chunkPosSet.contains(pos);
+            var hasNoun = begin >= 0 && nounEnd > begin;
+            if (!inChunk || hasNoun && determinerPosSet.contains(pos)) {
+                if (hasNoun)
+                    addLemmas(tokenList, begin, nounEnd, base, terms);
+                begin = -1;
             }
+            if (!inChunk) continue;
+            if (begin < 0) begin = i;
+            if (pos.startsWith("NN")) nounEnd = i + 1;
+        }
+    }
 
-            // Extract lemma from noun phrases
-            for (var np : nounPhrases) {
-                // Remove a phrase if it contains other noun phrases
-                boolean containsOther = false;
-                for (var other : nounPhrases) {
-                    if (np.contains(other) && np != other)
-                        containsOther = true;
-                }
-                if (containsOther) continue;
+    // Adds lemmas of tokens in [begin, end) of the sentence, whose first token is at base
+    static void addLemmas(List<CoreLabel> tokenList, int begin, int end, int base, TermList terms) {
+        // Iterate all tokens and skip certain words
+        for (var i = begin; i < end; i++) {
+            var token = tokenList.get(i);
+            // Skip a token if its POS should be ignored
+            var pos = token.get(CoreAnnotations.PartOfSpeechAnnotation.class);
+            if (skippedPosSet.contains(pos)) continue;
+            var lemma = token.lemma().toLowerCase();
 
-                // Get a copy of token list
-                var cnstTokenList = new ArrayList<>(tokenList.subList(np.start(), np.end() + 1));
+            // Skip a token if it is a number
+            if (isNumber(lemma)) continue;
 
-                // Iterate all tokens and skip certain words
-                for (var token : cnstTokenList) {
-                    var pos = token.get(CoreAnnotations.PartOfSpeechAnnotation.class);
-                    var lemma = token.lemma().toLowerCase();
+            // Convert token to its lemma
+            terms.add(lemma, base + i);
+        }
+    }
 
-                    // Skip a token if its POS should be ignored
-                    if (skippedPosSet.contains(pos)) continue;
+    private static boolean isNumber(String str) {
+        if (str.isEmpty()) return false;
+        for (var i = 0; i < str.length(); i++) {
+            var c = str.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
 
-                    // Skip a token if it contains number
-                    var numberMatcher = numberPattern.matcher(lemma);
-                    if (numberMatcher.matches()) continue;
+    // Finds noun phrases that contain no other noun phrase in one pass over a constituency tree
+    private static class LeafPhraseCollector {
+        private final List<CoreLabel> tokenList;
+        private final int base;
+        private final TermList terms;
+        private int position = 0; // index of the next token
+
+        LeafPhraseCollector(List<CoreLabel> tokenList, int base, TermList terms) {
+            this.tokenList = tokenList;
+            this.base = base;
+            this.terms = terms;
+        }
 
-                    // Convert token to its lemma
-                    if (!setDict.containsKey(lemma))
-                        setDict.put(lemma, new TreeSet<>());
-                    setDict.get(lemma).add(new ContentTag(node, block));
-                } // end token loop
-            } // end noun phrases loop
-        } // end sentence loop
+        // Returns number of tokens in the narrowest noun phrase of the subtree, or MAX_VALUE if there is none
+        int visit(Tree tree) {
+            if (tree.isLeaf() || tree.isPreTerminal()) {
+                position++;
+                return Integer.MAX_VALUE;
+            }
+            var start = position;
+            var narrowest = Integer.MAX_VALUE;
+            for (var child : tree.children())
+                narrowest = Math.min(narrowest, visit(child));
+            if (!"NP".equals(tree.value())) return narrowest;
+
+            // A narrower phrase inside is the leaf instead, one as wide covers the same tokens and is added already
+            var width = position - start;
+            if (narrowest > width)
+                addLemmas(tokenList, start, position, base, terms);
+            return Math.min(narrowest, width);
+        }
+    }
+
+    private synchronized StanfordCoreNLP getPipeline() {
+        if (pipeline == null)
+            pipeline = newPipeline(BuildMode.PARSE);
+        return pipeline;
     }
 
-    private static int countHeadlineLevel(String headline) {
-        return headline.split("#").length - 1;
+    private synchronized StanfordCoreNLP getChunkPipeline() {
+        if (chunkPipeline == null)
+            chunkPipeline = newPipeline(BuildMode.CHUNK);
+        return chunkPipeline;
     }
 
-    public void load(String indexPath) throws IOException, ClassNotFoundException {
-        var fileIn = new FileInputStream(indexPath);
-        var objIn = new ObjectInputStream(fileIn);
-        file = (IndexFile) objIn.readObject();
-        objIn.close();
-        fileIn.close();
+    // Pipeline annotating text to be indexed in given mode
+    static StanfordCoreNLP newPipeline(BuildMode mode) {
+        return new StanfordCoreNLP(mode == BuildMode.CHUNK ? chunkProps : props);
+    }
+
+    public Scorer getScorer() { return scorer; }
+
+    // Scorer.MATCH_COUNT restores the ranking by matched words only
+    public void setScorer(Scorer scorer) {
+        this.scorer = Objects.requireNonNull(scorer);
+        resultCache.clear();
+    }
+
+    // Keeps up to maxEntries recent searches holding at most maxResults results in total, zero entries disables it
+    public void setResultCache(int maxEntries, long maxResults) {
+        if (maxEntries < 0 || maxResults < 0)
+            throw new IllegalArgumentException("Result cache limits must not be negative.");
+        resultCache = new ResultCache(maxEntries, maxResults);
+    }
+
+    // Counters of the result cache since it was configured
+    public CacheStats getResultCacheStats() { return resultCache.stats(); }
+
+    public void load(String indexPath) throws IOException {
+        // In-flight searches keep using the previous index until they finish, results cached for it are stale
+        var start = System.nanoTime();
+        file = IndexFile.load(indexPath);
+        metrics.recordTime(Metrics.Phase.LOAD_INDEX, System.nanoTime() - start);
+        resultCache.clear();
+    }
+
+    // Returns node with given ID in the loaded index, or null if there is no such node
+    public Node getNode(int id) throws IndexNotLoadedException {
+        var file = this.file;
+        if (file == null) throw new IndexNotLoadedException();
+        return id >= 0 && id < file.nodes.length ? file.nodes[id] : null;
     }
 
     public ArrayList<SearchResult> search(String input) throws IndexNotLoadedException {
+        return search(input, Integer.MAX_VALUE);
+    }
+
+    // Returns one page of ranked results, starting from the given rank
+    public List<SearchResult> search(String input, int offset, int limit) throws IndexNotLoadedException {
+        if (offset < 0 || limit < 0)
+            throw new IllegalArgumentException("Offset and limit must not be negative.");
+        var top = search(input, (int) Math.min((long) offset + limit, Integer.MAX_VALUE));
+        return offset >= top.size() ? Collections.emptyList() : top.subList(offset, top.size());
+    }
+
+    // Session for searching while the query is typed, each typist should have their own
+    public QuerySession newSession() { return new QuerySession(this); }
+
+    IndexFile getFile() throws IndexNotLoadedException {
+        var file = this.file;
+        if (file == null) throw new IndexNotLoadedException();
+        return file;
+    }
+
+    Query analyze(String input) { return analyzer.analyze(input); }
+
+    // Returns at most k best results
+    public ArrayList<SearchResult> search(String input, int k) throws IndexNotLoadedException {
+        // Read index once, a concurrent reload does not affect this search
+        var file = this.file;
         // Throws exception if indices are not loaded
         if (file == null) throw new IndexNotLoadedException();
+        if (k <= 0) return new ArrayList<>();
+
+        // Lemmatize input with the shared query analyzer
+        var metrics = this.metrics;
+        var start = System.nanoTime();
+        var query = analyzer.analyze(input);
+        metrics.recordTime(Metrics.Phase.ANALYZE_QUERY, System.nanoTime() - start);
+        var result = rank(file, query, k, metrics);
+        metrics.increment(Metrics.Counter.SEARCHES, 1);
+        metrics.recordTime(Metrics.Phase.SEARCH, System.nanoTime() - start);
+        return result;
+    }
 
-        // Configure pipeline
-        var props = new Properties();
-        props.setProperty("annotators", "tokenize, ssplit, pos, lemma");
-        props.setProperty("ssplit.isOneSentence", "true");
-        var ppl = new StanfordCoreNLP(props);
-        var anno = new Annotation(input);
-        ppl.annotate(anno);
-
-        // Count frequency of input keywords
-        var statMap = new TreeMap<ContentTag, ResultStat>();
-        var coreMap = anno.get(CoreAnnotations.SentencesAnnotation.class).get(0);
-        for (var token : coreMap.get(CoreAnnotations.TokensAnnotation.class)) {
-            var lemma = token.lemma().toLowerCase();
-            if (!file.dict.containsKey(lemma)) continue;
-            for (var tag : file.dict.get(lemma)) {
-                if (!statMap.containsKey(tag))
-                    statMap.put(tag, new ResultStat());
-                var stat = statMap.get(tag);
-                stat.addMatchedKeyword(lemma);
-                stat.increaseMatch();
+    // Returns at most k best sections, none nested in another, each with at most blocksPerSection of its best
+    // blocks. Sections are ranked by the words of their whole subtree, as rolled up when the index was built.
+    public ArrayList<SectionResult> searchSections(String input, int k, int blocksPerSection)
+            throws IndexNotLoadedException {
+        var file = getFile();
+        if (k <= 0) return new ArrayList<>();
+        var metrics = this.metrics;
+        var start = System.nanoTime();
+        var query = analyzer.analyze(input);
+        metrics.recordTime(Metrics.Phase.ANALYZE_QUERY, System.nanoTime() - start);
+        var result = SectionSearch.search(file, query, k, Math.max(blocksPerSection, 0), scorer, metrics);
+        metrics.increment(Metrics.Counter.SEARCHES, 1);
+        metrics.recordTime(Metrics.Phase.SEARCH, System.nanoTime() - start);
+        return result;
+    }
+
+    // Returns at most k best results of each query in input order. Queries are lemmatized in bulk, then ranked in
+    // parallel against the same index.
+    public List<ArrayList<SearchResult>> searchAll(List<String> inputs, int k) throws IndexNotLoadedException {
+        var file = getFile();
+        var results = new ArrayList<ArrayList<SearchResult>>(inputs.size());
+        if (k <= 0) {
+            inputs.forEach(input -> results.add(new ArrayList<>()));
+            return results;
+        }
+
+        // Analysis of a batch is not a sample of query latency, only ranking of each query is timed
+        var metrics = this.metrics;
+        var queries = analyzer.analyzeAll(inputs);
+        results.addAll(Collections.nCopies(inputs.size(), null));
+        IntStream.range(0, queries.size()).parallel()
+                .forEach(i -> results.set(i, rank(file, queries.get(i), k, metrics)));
+        metrics.increment(Metrics.Counter.SEARCHES, inputs.size());
+        return results;
+    }
+
+    // Ranks blocks against an analyzed query, repeated queries are answered from the cache
+    private ArrayList<SearchResult> rank(IndexFile file, Query query, int k, Metrics metrics) {
+        var scorer = this.scorer;
+        var cache = resultCache;
+        var result = cache.get(file, scorer, query, k);
+        if (result == null) {
+            result = search(file, query, k, null, scorer, metrics);
+            cache.put(file, scorer, query, k, result);
+        }
+        return result;
+    }
+
+    static ArrayList<SearchResult> search(IndexFile file, Query query, int k, String source, Scorer scorer) {
+        return search(file, query, k, source, scorer, Metrics.NOOP);
+    }
+
+    static ArrayList<SearchResult> search(IndexFile file, Query query, int k, String source, Scorer scorer,
+                                          Metrics metrics) {
+        return search(file, file, query, k, source, scorer, metrics);
+    }
+
+    // Ranks blocks of one index against lemmatized query, results are tagged with given source. Postings of
+    // query words come from lookup, which must belong to the same index.
+    static ArrayList<SearchResult> search(IndexFile file, PostingLookup lookup, Query query, int k, String source,
+                                          Scorer scorer, Metrics metrics) {
+        return search(file, lookup, query, k, source, scorer, metrics, 0, file.tags.length);
+    }
+
+    // Only ranks blocks with IDs in [from, to), such as those of one section. Words are still weighed by how
+    // many blocks of the whole index contain them.
+    static ArrayList<SearchResult> search(IndexFile file, PostingLookup lookup, Query query, int k, String source,
+                                          Scorer scorer, Metrics metrics, int from, int to) {
+        var start = System.nanoTime();
+        var units = QueryUnits.find(lookup, query);
+        metrics.recordTime(Metrics.Phase.READ_POSTINGS, System.nanoTime() - start);
+        return rankUnits(file, units, k, source, scorer, file, null, metrics, from, to);
+    }
+
+    // Ranks blocks with IDs in [from, to) by the postings of query units. Words are scored with given statistics,
+    // where a unit occurs in docFreqs[its first word in the query] blocks, or in those of its postings if null.
+    static ArrayList<SearchResult> rankUnits(IndexFile file, QueryUnits units, int k, String source, Scorer scorer,
+                                             Scorer.IndexStats stats, int[] docFreqs, Metrics metrics,
+                                             int from, int to) {
+        var read = System.nanoTime();
+        var postings = units.postings;
+        var words = units.words;
+        var counts = units.counts;
+        var expanded = units.expanded;
+
+        // Keep the k best results in a heap whose head is the worst one
+        var heap = new PriorityQueue<SearchResult>(Math.min(k, 64), Collections.reverseOrder());
+        var probe = new SearchResult(null, 0, 0, 0);
+        probe.source = source;
+
+        // Merge sorted postings, visiting matched blocks in document order
+        var cursors = new int[postings.size()];
+        if (from > 0) {
+            for (var i = 0; i < cursors.length; i++) {
+                var found = Arrays.binarySearch(postings.get(i).ids, from);
+                cursors[i] = found >= 0 ? found : -found - 1;
             }
         }
+        var nMatched = 0;
+        while (true) {
+            // Find the smallest block ID among all cursors
+            var minId = Integer.MAX_VALUE;
+            for (var i = 0; i < cursors.length; i++) {
+                var ids = postings.get(i).ids;
+                if (cursors[i] < ids.length && ids[cursors[i]] < minId)
+                    minId = ids[cursors[i]];
+            }
+            if (minId >= to) break;
+            nMatched++;
+
+            // Count keywords and matches of this block
+            probe.tag = file.tags[minId];
+            probe.length = file.tagLengths[minId];
+            probe.nWords = 0;
+            probe.nMatches = 0;
+            probe.nExpanded = 0;
+            probe.score = 0;
+            var prev = -1; // last matched unit with positions
+            for (var i = 0; i < cursors.length; i++) {
+                var list = postings.get(i);
+                if (cursors[i] < list.ids.length && list.ids[cursors[i]] == minId) {
+                    probe.nWords += words.get(i);
+                    probe.nMatches += counts.get(i);
+                    probe.nExpanded += expanded.get(i);
+                    var docFreq = docFreqs == null ? list.ids.length : docFreqs[units.starts.get(i)];
+                    var score = counts.get(i) * scorer.score(list.freqs[cursors[i]], docFreq,
+                            file.blockLengths[minId], stats);
+                    probe.score += expanded.get(i) == 1 ? score * EXPANSION_WEIGHT : score;
+
+                    // Reward units found close to the previous one
+                    if (list.positions != null) {
+                        if (prev >= 0)
+                            probe.score += scorer.proximity(minDistance(postings.get(prev), cursors[prev] - 1,
+                                    list, cursors[i]));
+                        prev = i;
+                    }
+                    cursors[i]++;
+                }
+            }
+            probe.score *= scorer.fieldWeight(probe.tag.getBlock().type);
+
+            // Only allocate a new probe when the current one is kept
+            if (heap.size() < k) {
+                heap.add(probe);
+            } else if (probe.compareTo(heap.peek()) < 0) {
+                heap.poll();
+                heap.add(probe);
+            } else {
+                continue;
+            }
+            probe = new SearchResult(null, 0, 0, 0);
+            probe.source = source;
+        }
 
-        // Convert to search result
-        var result = new ArrayList<SearchResult>();
-        statMap.forEach((var tag, var stat) ->
-                result.add(new SearchResult(tag, stat.numMatchedKeywords(), stat.numMatches())));
+        // Sort results from best to worst
+        var result = new ArrayList<>(heap);
         Collections.sort(result);
+        metrics.recordTime(Metrics.Phase.RANK, System.nanoTime() - read);
+        metrics.increment(Metrics.Counter.MATCHED_BLOCKS, nMatched);
 
         return result;
     }
 
-}
-
-class IndexFile implements Serializable {
-    // Parsed text
-    Node root = null;
-    // Keyword indices
-    HashMap<String, ArrayList<ContentTag>> dict = null;
-}
+    // Postings of blocks where the words occur in a row, offsets are those of each word in the phrase.
+    // Positions of the result are where the phrase starts.
+    static Postings matchPhrase(ArrayList<Postings> parts, IntList offsets) {
+        var ids = new IntList();
+        var freqs = new IntList();
+        var positions = new IntList();
+        var first = parts.get(0);
+        var cursors = new int[parts.size()]; // posting of each word in the current block
+        var scans = new int[parts.size()]; // position of each word in the current block
+        for (var i = 0; i < first.ids.length; i++) {
+            // Every word must occur in the block
+            var id = first.ids[i];
+            var inBlock = true;
+            for (var j = 1; j < parts.size() && inBlock; j++) {
+                var other = parts.get(j).ids;
+                while (cursors[j] < other.length && other[cursors[j]] < id) cursors[j]++;
+                inBlock = cursors[j] < other.length && other[cursors[j]] == id;
+            }
+            if (!inBlock) continue;
+
+            // Merge sorted positions, each start of the phrase must have every word at its offset
+            Arrays.fill(scans, 0);
+            var freq = 0;
+            for (var p = 0; p < first.freqs[i]; p++) {
+                var start = first.positions[first.positionStarts[i] + p] - offsets.get(0);
+                var matched = true;
+                for (var j = 1; j < parts.size() && matched; j++) {
+                    var part = parts.get(j);
+                    var begin = part.positionStarts[cursors[j]];
+                    var target = start + offsets.get(j);
+                    while (scans[j] < part.freqs[cursors[j]] && part.positions[begin + scans[j]] < target)
+                        scans[j]++;
+                    matched = scans[j] < part.freqs[cursors[j]] && part.positions[begin + scans[j]] == target;
+                }
+                if (!matched) continue;
+                positions.add(start);
+                freq++;
+            }
+            if (freq == 0) continue;
+            ids.add(id);
+            freqs.add(freq);
+        }
+        return new Postings(ids.toArray(), freqs.toArray(), positions.toArray());
+    }
 
-class ResultStat {
-    private HashSet<String> keywords = new HashSet<>();
-    private int nMatches = 0;
+    // Smallest number of tokens between positions of two postings in the same block
+    private static int minDistance(Postings a, int i, Postings b, int j) {
+        int p = a.positionStarts[i], pEnd = p + a.freqs[i];
+        int q = b.positionStarts[j], qEnd = q + b.freqs[j];
+        var min = Integer.MAX_VALUE;
+        while (p < pEnd && q < qEnd) {
+            var diff = a.positions[p] - b.positions[q];
+            min = Math.min(min, Math.abs(diff));
+            if (diff < 0) p++;
+            else q++;
+        }
+        return Math.max(min, 1);
+    }
 
-    void addMatchedKeyword(String kw) { keywords.add(kw); }
-    int numMatchedKeywords() { return keywords.size(); }
-    void increaseMatch() { nMatches++; }
-    int numMatches() { return nMatches; }
 }
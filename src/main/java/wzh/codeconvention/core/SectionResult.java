@@ -0,0 +1,42 @@
+package wzh.codeconvention.core;
+
+import java.util.ArrayList;
+
+// A section ranked by the words in its whole subtree, with its best blocks collapsed under it
+public class SectionResult implements Comparable<SectionResult> {
+    Node node;
+    int nWords, nMatches;
+    int nExpanded = 0; // words only matched by prefix or fuzzy expansion
+    double score = 0;
+    ArrayList<SearchResult> blocks = new ArrayList<>(); // best first, all in the subtree of node
+
+    SectionResult(Node node) {
+        this.node = node;
+    }
+
+    public Node getNode() { return node; }
+    public int getNumWords() { return nWords; }
+    public int getNumMatches() { return nMatches; }
+    public int getNumExpanded() { return nExpanded; }
+    public double getScore() { return score; }
+    public ArrayList<SearchResult> getBlocks() { return blocks; }
+
+    @Override
+    public String toString() {
+        return String.format("{%s, %d, %d, %s}", node.headline, nWords, nMatches, blocks);
+    }
+
+    @Override
+    public int compareTo(SectionResult o) {
+        if (score != o.score)
+            return Double.compare(o.score, score);
+        else if (nWords != o.nWords)
+            return o.nWords - nWords;
+        else if (nExpanded != o.nExpanded) // exact words rank higher
+            return nExpanded - o.nExpanded;
+        else if (nMatches != o.nMatches)
+            return o.nMatches - nMatches;
+        else // keep document order
+            return node.id - o.node.id;
+    }
+}
@@ -0,0 +1,148 @@
+package wzh.codeconvention.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+
+/*
+ * Ranks sections, a node with everything under it, against a query. Each word is scored on the rollups
+ * stored with its term, so a section is scored as a whole without visiting its blocks. Phrases and words
+ * missing from the index have no rollups and are rolled up from their block postings. Sections are
+ * collapsed hierarchically: a section nested in a better one, or holding a better one, is left out, and
+ * only the best blocks of the sections kept are ranked.
+ */
+final class SectionSearch {
+    private static final Postings MISSING = new Postings(new int[0], new int[0], null); // cached null
+
+    private SectionSearch() {}
+
+    static ArrayList<SectionResult> search(IndexFile file, Query query, int k, int blocksPerSection,
+                                           Scorer scorer, Metrics metrics) {
+        var start = System.nanoTime();
+        // Split the query into units as block search does, the memo keeps their block postings for the best
+        // blocks of each section
+        var lookup = new Memo(file);
+        var units = QueryUnits.find(lookup, query);
+        var postings = new ArrayList<Postings>(units.size());
+        for (var i = 0; i < units.size(); i++) {
+            // Words of the index have their rollups stored, phrases and expanded words are rolled up here
+            var first = units.starts.get(i);
+            var index = query.phrases[first] < 0 && units.expanded.get(i) == 0
+                    ? file.findTerm(query.lemmas.get(first).getBytes(StandardCharsets.UTF_8)) : -1;
+            postings.add(index >= 0 ? file.sectionPostings(index) : rollUp(file, units.postings.get(i)));
+        }
+
+        var read = System.nanoTime();
+        metrics.recordTime(Metrics.Phase.READ_POSTINGS, read - start);
+
+        // Score every matched section, there are far fewer nodes than blocks. The root holds the whole
+        // document, so it is only a section when there is no other.
+        var candidates = new ArrayList<SectionResult>();
+        var cursors = new int[postings.size()];
+        while (true) {
+            var minId = Integer.MAX_VALUE;
+            for (var i = 0; i < cursors.length; i++) {
+                var ids = postings.get(i).ids;
+                if (cursors[i] < ids.length && ids[cursors[i]] < minId)
+                    minId = ids[cursors[i]];
+            }
+            if (minId == Integer.MAX_VALUE) break;
+
+            var section = new SectionResult(file.nodes[minId]);
+            for (var i = 0; i < cursors.length; i++) {
+                var list = postings.get(i);
+                if (cursors[i] < list.ids.length && list.ids[cursors[i]] == minId) {
+                    section.nWords += units.words.get(i);
+                    section.nMatches += units.counts.get(i);
+                    section.nExpanded += units.expanded.get(i);
+                    var score = units.counts.get(i) * scorer.score(list.freqs[cursors[i]], list.ids.length,
+                            file.sectionLengths[minId], file.sectionStats);
+                    section.score += units.expanded.get(i) == 1 ? score * Searcher.EXPANSION_WEIGHT : score;
+                    cursors[i]++;
+                }
+            }
+            if (minId != file.root.id || file.root.children.isEmpty())
+                candidates.add(section);
+        }
+        Collections.sort(candidates);
+
+        // Keep sections from best to worst unless one already kept is an ancestor or a descendant
+        var kept = new boolean[file.nodes.length];
+        var holdsKept = new boolean[file.nodes.length]; // some descendant is kept
+        var result = new ArrayList<SectionResult>();
+        for (var section : candidates) {
+            if (result.size() >= k) break;
+            var node = section.node;
+            if (holdsKept[node.id]) continue;
+            var nested = false;
+            for (var n = node; n != null && !nested; n = n.parent)
+                nested = kept[n.id];
+            if (nested) continue;
+            kept[node.id] = true;
+            for (var n = node.parent; n != null; n = n.parent)
+                holdsKept[n.id] = true;
+            result.add(section);
+        }
+        metrics.recordTime(Metrics.Phase.RANK, System.nanoTime() - read);
+
+        // Best blocks of each section kept, its blocks have contiguous IDs
+        for (var section : result) {
+            if (blocksPerSection == 0) break;
+            var id = section.node.id;
+            section.blocks = Searcher.search(file, lookup, query, blocksPerSection, null, scorer, Metrics.NOOP,
+                    file.sectionBegins[id], file.sectionEnds[id]);
+        }
+        return result;
+    }
+
+    // Sums block postings over the node of each block and its ancestors
+    private static Postings rollUp(IndexFile file, Postings blocks) {
+        var freqs = new int[file.nodes.length];
+        var nNodes = 0;
+        for (var i = 0; i < blocks.ids.length; i++) {
+            for (var node = file.tags[blocks.ids[i]].getNode(); node != null; node = node.parent) {
+                if (freqs[node.id] == 0) nNodes++;
+                freqs[node.id] += blocks.freqs[i];
+            }
+        }
+        var ids = new int[nNodes];
+        var nodeFreqs = new int[nNodes];
+        var next = 0;
+        for (var id = 0; id < freqs.length; id++) {
+            if (freqs[id] == 0) continue;
+            ids[next] = id;
+            nodeFreqs[next++] = freqs[id];
+        }
+        return new Postings(ids, nodeFreqs, null);
+    }
+
+    // Postings looked up once for all sections of one search, positions are always decoded
+    private static class Memo implements PostingLookup {
+        private final IndexFile file;
+        private final HashMap<String, Postings> exact = new HashMap<>();
+        private final HashMap<String, Postings> similar = new HashMap<>();
+
+        Memo(IndexFile file) {
+            this.file = file;
+        }
+
+        @Override
+        public Postings postings(String term, boolean withPositions) {
+            var list = exact.computeIfAbsent(term, t -> {
+                var found = file.postings(t, true);
+                return found == null ? MISSING : found;
+            });
+            return list == MISSING ? null : list;
+        }
+
+        @Override
+        public Postings expand(String lemma) {
+            var list = similar.computeIfAbsent(lemma, l -> {
+                var found = file.expand(l);
+                return found == null ? MISSING : found;
+            });
+            return list == MISSING ? null : list;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package wzh.codeconvention.core;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+
+/*
+ * Builds an index while the Markdown file is being parsed. Nodes and blocks go to the index writer
+ * as soon as they are complete, and only a bounded batch of paragraphs waits for annotation. Postings
+ * are gathered in memory until they exceed the budget, then spilled to a sorted run file. Runs are
+ * merged term by term at the end, a few at a time in several passes if there are many, so no step
+ * holds the whole document or dictionary or has more than a few files open.
+ */
+class StreamingBuilder implements MarkdownParser.Listener {
+    // Rough heap cost of a dictionary entry besides the term's characters
+    private static final int ENTRY_OVERHEAD = 64;
+    // Runs read at once while merging, their read buffers share the memory budget
+    static final int MERGE_FAN_IN = 16;
+    private static final int MIN_BUFFER_SIZE = 512;
+    private static final int MAX_BUFFER_SIZE = 8192;
+
+    private final Searcher searcher;
+    private final BuildMode mode;
+    private final AnnotationCache cache;
+    private final ExecutorService executor; // annotates every batch of the build
+    private final Metrics metrics;
+    private final IndexWriter writer;
+    private final Path runDir;
+    private final String runPrefix;
+    private final long memoryBudget;
+    private final int batchSize;
+
+    private int nNodes = 0, nBlocks = 0;
+    private Document.Fingerprint fingerprint = new Document.Fingerprint(); // of the current node
+
+    // Blocks waiting for their paragraphs to be annotated, they are written once their lengths are known
+    private final ArrayList<ContentTag> pending = new ArrayList<>();
+
+    // Current run of postings and its estimated size in bytes
+    private HashMap<String, PostingList> run = new HashMap<>();
+    private long runSize = 0;
+    private final ArrayList<Path> runPaths = new ArrayList<>();
+
+    static void build(Searcher searcher, String textPath, String indexPath, BuildMode mode, long memoryBudget,
+                      int batchSize, AnnotationCache cache) throws IOException {
+        var executor = searcher.newBuildExecutor();
+        try (var writer = new IndexWriter(indexPath, mode)) {
+            var builder = new StreamingBuilder(searcher, writer, executor, indexPath, mode, memoryBudget, batchSize,
+                    cache);
+            try {
+                MarkdownParser.parse(textPath, builder);
+                builder.finish();
+            } finally {
+                builder.deleteRuns();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private StreamingBuilder(Searcher searcher, IndexWriter writer, ExecutorService executor, String indexPath,
+                             BuildMode mode, long memoryBudget, int batchSize, AnnotationCache cache) {
+        this.searcher = searcher;
+        this.mode = mode;
+        this.writer = writer;
+        this.executor = executor;
+        var target = Paths.get(indexPath).toAbsolutePath();
+        runDir = target.getParent();
+        runPrefix = target.getFileName().toString();
+        this.memoryBudget = memoryBudget;
+        this.batchSize = batchSize;
+        this.cache = cache;
+        metrics = searcher.getMetrics();
+    }
+
+    @Override
+    public void startNode(Node node) {
+        node.id = nNodes++;
+        // Only the chain of ancestors is kept, children are not linked
+    }
+
+    @Override
+    public void endNode(Node node) throws IOException {
+        writer.addNode(node, fingerprint.finish(node.headline));
+        fingerprint = new Document.Fingerprint();
+    }
+
+    @Override
+    public void endBlock(Node node, Block block) throws IOException {
+        block.id = nBlocks++;
+        fingerprint.add(block);
+        pending.add(new ContentTag(node, block));
+        if (pending.size() >= batchSize)
+            flushPending();
+    }
+
+    // Parsing overlaps annotation, so it is not timed on its own
+    private void finish() throws IOException {
+        flushPending();
+        if (!run.isEmpty())
+            spillRun();
+        var start = System.nanoTime();
+        mergeRuns();
+        var merged = System.nanoTime();
+        metrics.recordTime(Metrics.Phase.MERGE_POSTINGS, merged - start);
+        writer.finish();
+        metrics.recordTime(Metrics.Phase.WRITE_INDEX, System.nanoTime() - merged);
+    }
+
+    private void flushPending() throws IOException {
+        if (pending.isEmpty()) return;
+        var plainTags = new ArrayList<ContentTag>();
+        for (var tag : pending) {
+            if (tag.getBlock().type == ContentType.PLAIN_TEXT)
+                plainTags.add(tag);
+        }
+        var termLists = plainTags.isEmpty() ? new ArrayList<TermList>()
+                : searcher.annotateAll(executor, plainTags, mode, cache);
+
+        // Blocks are annotated in document order, so postings in a run stay sorted
+        var next = 0;
+        for (var tag : pending) {
+            var block = tag.getBlock();
+            var terms = block.type == ContentType.PLAIN_TEXT ? termLists.get(next++) : CodeTokenizer.tokenize(block);
+            writer.addBlock(tag.getNode().id, block, terms.size());
+            metrics.increment(Metrics.Counter.TERMS, terms.size());
+            for (var i = 0; i < terms.size(); i++) {
+                var term = terms.term(i);
+                var postings = run.get(term);
+                if (postings == null) {
+                    postings = new PostingList();
+                    run.put(term, postings);
+                    runSize += ENTRY_OVERHEAD + 2L * term.length();
+                }
+                if (postings.size() == 0 || postings.ids.last() != block.id)
+                    runSize += 2 * Integer.BYTES;
+                postings.add(block.id, terms.position(i));
+                runSize += Integer.BYTES;
+            }
+        }
+        metrics.increment(Metrics.Counter.BLOCKS, pending.size());
+        pending.clear();
+        if (runSize > memoryBudget)
+            spillRun();
+    }
+
+    // Run file: (more flag, term, postings count, postings) for each term in order of UTF-8 bytes, where
+    // each posting is block ID, frequency and positions
+    private void spillRun() throws IOException {
+        var termBytes = new ArrayList<byte[]>(run.size());
+        run.keySet().forEach((var term) -> termBytes.add(term.getBytes(StandardCharsets.UTF_8)));
+        termBytes.sort(Arrays::compareUnsigned);
+
+        var path = Files.createTempFile(runDir, runPrefix, ".run");
+        runPaths.add(path);
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            for (var term : termBytes) {
+                var postings = run.get(new String(term, StandardCharsets.UTF_8));
+                out.writeBoolean(true);
+                out.writeInt(term.length);
+                out.write(term);
+                out.writeInt(postings.size());
+                var position = 0;
+                for (var i = 0; i < postings.size(); i++) {
+                    var freq = postings.freqs.get(i);
+                    out.writeInt(postings.ids.get(i));
+                    out.writeInt(freq);
+                    for (var j = 0; j < freq; j++)
+                        out.writeInt(postings.positions.get(position++));
+                }
+            }
+            out.writeBoolean(false);
+        }
+        run = new HashMap<>();
+        runSize = 0;
+    }
+
+    // Merge runs into the term table, runs cover increasing block IDs so postings are concatenated.
+    // Consecutive runs are merged into longer ones until few enough remain to be read at once.
+    private void mergeRuns() throws IOException {
+        var bufferSize = (int) Math.max(MIN_BUFFER_SIZE,
+                Math.min(MAX_BUFFER_SIZE, memoryBudget / (MERGE_FAN_IN + 1)));
+        var runs = new ArrayList<>(runPaths);
+        while (runs.size() > MERGE_FAN_IN) {
+            var merged = new ArrayList<Path>();
+            for (var begin = 0; begin < runs.size(); begin += MERGE_FAN_IN) {
+                var group = runs.subList(begin, Math.min(begin + MERGE_FAN_IN, runs.size()));
+                if (group.size() == 1) {
+                    merged.add(group.get(0));
+                    continue;
+                }
+                var path = Files.createTempFile(runDir, runPrefix, ".run");
+                runPaths.add(path);
+                try (var out = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(path), bufferSize))) {
+                    merge(group, bufferSize, new RunSink(out));
+                    out.writeBoolean(false);
+                }
+                for (var run : group)
+                    Files.delete(run);
+                merged.add(path);
+            }
+            runs = merged;
+        }
+
+        merge(runs, bufferSize, new PostingSink() {
+            @Override
+            public void startTerm(byte[] term, int count) throws IOException {
+                metrics.increment(Metrics.Counter.POSTINGS, count);
+                writer.startTerm(term, count);
+            }
+
+            @Override
+            public void addPosting(int id, int freq) throws IOException { writer.addPosting(id, freq); }
+
+            @Override
+            public void addPosition(int position) throws IOException { writer.addPosition(position); }
+        });
+    }
+
+    // Merges terms of the runs in order, postings of a term are passed in run order
+    private static void merge(List<Path> runs, int bufferSize, PostingSink sink) throws IOException {
+        var cursors = new PriorityQueue<RunCursor>();
+        try {
+            for (var i = 0; i < runs.size(); i++) {
+                var cursor = new RunCursor(i, runs.get(i), bufferSize);
+                if (cursor.next()) cursors.add(cursor);
+                else cursor.close();
+            }
+
+            var sameTerm = new ArrayList<RunCursor>();
+            while (!cursors.isEmpty()) {
+                // Collect all runs holding the smallest term, in run order
+                sameTerm.add(cursors.poll());
+                while (!cursors.isEmpty() && Arrays.equals(cursors.peek().term, sameTerm.get(0).term))
+                    sameTerm.add(cursors.poll());
+
+                var count = 0;
+                for (var cursor : sameTerm)
+                    count += cursor.count;
+                sink.startTerm(sameTerm.get(0).term, count);
+                for (var cursor : sameTerm) {
+                    for (var i = 0; i < cursor.count; i++) {
+                        var id = cursor.in.readInt();
+                        var freq = cursor.in.readInt();
+                        sink.addPosting(id, freq);
+                        for (var j = 0; j < freq; j++)
+                            sink.addPosition(cursor.in.readInt());
+                    }
+                    if (cursor.next()) cursors.add(cursor);
+                    else cursor.close();
+                }
+                sameTerm.clear();
+            }
+        } finally {
+            for (var cursor : cursors)
+                cursor.close();
+        }
+    }
+
+    private void deleteRuns() throws IOException {
+        for (var path : runPaths)
+            Files.deleteIfExists(path);
+    }
+
+    // Receives merged terms, each followed by its postings and their positions
+    private interface PostingSink {
+        void startTerm(byte[] term, int count) throws IOException;
+
+        void addPosting(int id, int freq) throws IOException;
+
+        void addPosition(int position) throws IOException;
+    }
+
+    // Writes merged terms to a run file in the format of spillRun
+    private static class RunSink implements PostingSink {
+        private final DataOutputStream out;
+
+        RunSink(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void startTerm(byte[] term, int count) throws IOException {
+            out.writeBoolean(true);
+            out.writeInt(term.length);
+            out.write(term);
+            out.writeInt(count);
+        }
+
+        @Override
+        public void addPosting(int id, int freq) throws IOException {
+            out.writeInt(id);
+            out.writeInt(freq);
+        }
+
+        @Override
+        public void addPosition(int position) throws IOException {
+            out.writeInt(position);
+        }
+    }
+
+    // Reads terms of a run file one at a time, the postings of each are read by the caller
+    private static class RunCursor implements Comparable<RunCursor>, Closeable {
+        final int index;
+        final DataInputStream in;
+        byte[] term;
+        int count;
+
+        RunCursor(int index, Path path, int bufferSize) throws IOException {
+            this.index = index;
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), bufferSize));
+        }
+
+        boolean next() throws IOException {
+            if (!in.readBoolean()) return false;
+            term = new byte[in.readInt()];
+            in.readFully(term);
+            count = in.readInt();
+            return true;
+        }
+
+        @Override
+        public int compareTo(RunCursor other) {
+            var diff = Arrays.compareUnsigned(term, other.term);
+            return diff != 0 ? diff : Integer.compare(index, other.index);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package wzh.codeconvention.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/*
+ * Expands a query lemma missing from the index to indexed terms that start with it or are within a
+ * few edits of it. The sorted term table is walked as an implicit trie: terms sharing a prefix are
+ * adjacent, so a row of the edit distance table is computed once for each prefix and whole ranges
+ * of terms are skipped once their prefix is too far from the lemma. Distances count UTF-8 bytes,
+ * which are characters for the English vocabulary of the guides.
+ */
+class TermExpander {
+    static final int MIN_PREFIX_LENGTH = 3;
+    static final int MAX_EXPANSIONS = 8;
+
+    // Returns postings of blocks containing any expansion of the lemma without positions, or null if there is none
+    static Postings expand(IndexFile file, String lemma) {
+        var key = lemma.getBytes(StandardCharsets.UTF_8);
+        var terms = new IntList();
+        var distances = new IntList();
+        if (key.length >= MIN_PREFIX_LENGTH)
+            findPrefixed(file, key, terms, distances);
+        if (terms.isEmpty())
+            findSimilar(file, key, maxEdits(key.length), terms, distances);
+        if (terms.isEmpty()) return null;
+
+        // Prefer closer and more frequent terms
+        var order = new ArrayList<Integer>(terms.size());
+        for (var i = 0; i < terms.size(); i++)
+            order.add(i);
+        order.sort(Comparator.<Integer>comparingInt(distances::get)
+                .thenComparingInt(i -> -file.documentFrequency(terms.get(i)))
+                .thenComparingInt(terms::get));
+
+        // Union postings of the chosen terms, packed as (ID, frequency) so that sorting orders by ID
+        var packed = new long[0];
+        for (var i = 0; i < Math.min(order.size(), MAX_EXPANSIONS); i++) {
+            var postings = file.postings(terms.get(order.get(i)), false);
+            var begin = packed.length;
+            packed = Arrays.copyOf(packed, begin + postings.ids.length);
+            for (var j = 0; j < postings.ids.length; j++)
+                packed[begin + j] = (long) postings.ids[j] << 32 | postings.freqs[j];
+        }
+        Arrays.sort(packed);
+
+        // Frequencies of expansions in the same block add up
+        var ids = new IntList();
+        var freqs = new IntList();
+        for (var pair : packed) {
+            var id = (int) (pair >>> 32);
+            if (!ids.isEmpty() && ids.last() == id)
+                freqs.set(freqs.size() - 1, freqs.last() + (int) pair);
+            else {
+                ids.add(id);
+                freqs.add((int) pair);
+            }
+        }
+        return new Postings(ids.toArray(), freqs.toArray(), null);
+    }
+
+    // Short lemmas are too ambiguous to correct
+    static int maxEdits(int length) {
+        if (length >= 8) return 2;
+        if (length >= 4) return 1;
+        return 0;
+    }
+
+    // Terms starting with key, distance is the number of extra bytes
+    static void findPrefixed(IndexFile file, byte[] key, IntList terms, IntList distances) {
+        var begin = file.findTerm(key);
+        begin = begin < 0 ? -(begin + 1) : begin + 1; // the key itself is not an expansion
+        var end = file.findPrefixEnd(key, key.length, begin);
+        for (var i = begin; i < end; i++) {
+            terms.add(i);
+            distances.add(file.termLength(i) - key.length);
+        }
+    }
+
+    // Terms within maxEdits insertions, deletions or substitutions of key
+    static void findSimilar(IndexFile file, byte[] key, int maxEdits, IntList terms, IntList distances) {
+        if (maxEdits <= 0) return;
+
+        // rows[d] is the distance table row after the first d bytes of path
+        var rows = new ArrayList<int[]>();
+        var first = new int[key.length + 1];
+        for (var j = 0; j <= key.length; j++)
+            first[j] = j;
+        rows.add(first);
+        var path = new byte[16];
+        var depth = 0; // number of bytes of path with a valid row
+
+        var index = 0;
+        while (index < file.numTerms()) {
+            // Rows of the prefix shared with the previous path are still valid
+            var length = file.termLength(index);
+            var common = 0;
+            while (common < depth && common < length && file.termByte(index, common) == path[common])
+                common++;
+            depth = common;
+
+            // Extend rows to the whole term, stopping once no term with this prefix can be close enough
+            var pruned = false;
+            while (depth < length) {
+                var b = file.termByte(index, depth);
+                if (depth == path.length)
+                    path = Arrays.copyOf(path, depth * 2);
+                path[depth] = b;
+                if (rows.size() == depth + 1)
+                    rows.add(new int[key.length + 1]);
+                var prev = rows.get(depth);
+                var row = rows.get(depth + 1);
+                row[0] = depth + 1;
+                var min = row[0];
+                for (var j = 1; j <= key.length; j++) {
+                    var replace = prev[j - 1] + (key[j - 1] == b ? 0 : 1);
+                    row[j] = Math.min(replace, Math.min(prev[j], row[j - 1]) + 1);
+                    min = Math.min(min, row[j]);
+                }
+                depth++;
+                if (min > maxEdits) {
+                    pruned = true;
+                    break;
+                }
+            }
+            if (pruned) {
+                index = file.findPrefixEnd(path, depth, index);
+                continue;
+            }
+
+            var distance = rows.get(length)[key.length];
+            if (distance > 0 && distance <= maxEdits) {
+                terms.add(index);
+                distances.add(distance);
+            }
+            index++;
+        }
+    }
+}
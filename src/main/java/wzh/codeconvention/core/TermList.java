@@ -0,0 +1,47 @@
+package wzh.codeconvention.core;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+
+// Terms extracted from a block, each with the offset of its token in the block
+class TermList {
+    private final ArrayList<String> terms;
+    private final IntList positions;
+
+    TermList() { this(8); }
+
+    TermList(int capacity) {
+        terms = new ArrayList<>(capacity);
+        positions = new IntList(capacity);
+    }
+
+    void add(String term, int position) {
+        terms.add(term);
+        positions.add(position);
+    }
+
+    String term(int index) { return terms.get(index); }
+    int position(int index) { return positions.get(index); }
+    int size() { return terms.size(); }
+
+    // Postings require positions of each term in increasing order. A term found twice at the same token, such
+    // as a keyword in backticks inside a noun phrase, is kept once so that it counts once.
+    TermList sorted() {
+        var order = new ArrayList<Integer>(size());
+        for (var i = 0; i < size(); i++)
+            order.add(i);
+        order.sort(Comparator.comparingInt(positions::get)); // stable, equal positions keep their order
+        var result = new TermList(size());
+        var sameStart = 0; // first term of the result at the current position
+        for (var i : order) {
+            var term = terms.get(i);
+            var position = positions.get(i);
+            if (result.size() == 0 || result.positions.last() != position)
+                sameStart = result.size();
+            else if (result.terms.subList(sameStart, result.size()).contains(term))
+                continue;
+            result.add(term, position);
+        }
+        return result;
+    }
+}
@@ -5,14 +5,60 @@ import com.vladsch.flexmark.parser.Parser;
 import com.vladsch.flexmark.profiles.pegdown.Extensions;
 import com.vladsch.flexmark.profiles.pegdown.PegdownOptionsAdapter;
 import com.vladsch.flexmark.util.options.DataHolder;
+import wzh.codeconvention.core.ContentTag;
+import wzh.codeconvention.core.LatencyHistogram;
+import wzh.codeconvention.core.Node;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Renders Markdown to HTML, pages of tags and nodes are cached by identity, so a reloaded index starts afresh
 class MarkdownRenderer {
+    private static final int CACHE_SIZE = 256;
+
     private static final DataHolder options =
             PegdownOptionsAdapter.flexmarkOptions(Extensions.ALL);
     private static final Parser parser = Parser.builder(options).build();
     private static final HtmlRenderer renderer = HtmlRenderer.builder(options).build();
 
+    // Tags and nodes do not override equals, so they are compared by identity
+    private static final LinkedHashMap<Object, String> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, String> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private static long hits = 0, misses = 0;
+    private static final LatencyHistogram renderTimes = new LatencyHistogram(); // in microseconds
+
     public static String render(String src) {
-        return "<html>" + renderer.render(parser.parse(src));
+        var start = System.nanoTime();
+        var html = "<html>" + renderer.render(parser.parse(src));
+        renderTimes.record((System.nanoTime() - start) / 1000);
+        return html;
+    }
+
+    static String render(ContentTag tag) { return cached(tag, tag::toString); }
+
+    static String render(Node node) { return cached(node, node::toString); }
+
+    private static synchronized String cached(Object key, Supplier<String> src) {
+        var html = cache.get(key);
+        if (html != null) {
+            hits++;
+            return html;
+        }
+        misses++;
+        html = render(src.get());
+        cache.put(key, html);
+        return html;
+    }
+
+    static synchronized String stats() {
+        var requests = hits + misses;
+        return String.format("%d hits, %d misses (%.1f%% hit ratio), render mean %.0f us, p99 %d us",
+                hits, misses, requests == 0 ? 0 : 100.0 * hits / requests, renderTimes.getMean(),
+                renderTimes.getValueAtPercentile(99));
     }
 }
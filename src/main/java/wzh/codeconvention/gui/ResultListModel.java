@@ -0,0 +1,29 @@
+package wzh.codeconvention.gui;
+
+import wzh.codeconvention.core.SearchResult;
+
+import javax.swing.*;
+import java.util.Collections;
+import java.util.List;
+
+// Results of the last search rendered on demand. A list with fixed cell sizes only asks for visible rows,
+// so results that are never scrolled to are never rendered.
+class ResultListModel extends AbstractListModel<String> {
+    private List<SearchResult> results = Collections.emptyList();
+
+    void setResults(List<SearchResult> results) {
+        var removed = this.results.size();
+        this.results = Collections.emptyList();
+        if (removed > 0) fireIntervalRemoved(this, 0, removed - 1);
+        this.results = results;
+        if (!results.isEmpty()) fireIntervalAdded(this, 0, results.size() - 1);
+    }
+
+    SearchResult getResult(int index) { return results.get(index); }
+
+    @Override
+    public int getSize() { return results.size(); }
+
+    @Override
+    public String getElementAt(int index) { return MarkdownRenderer.render(results.get(index).getTag()); }
+}
@@ -1,22 +1,31 @@
 package wzh.codeconvention.gui;
 
+import wzh.codeconvention.core.BuildMode;
 import wzh.codeconvention.core.IndexNotLoadedException;
+import wzh.codeconvention.core.InvalidIndexException;
+import wzh.codeconvention.core.QuerySession;
 import wzh.codeconvention.core.SearchResult;
 import wzh.codeconvention.core.Searcher;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.filechooser.FileFilter;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.awt.event.WindowAdapter;
-import java.awt.event.WindowEvent;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class SearcherGUI {
+    private static final int TYPING_DELAY = 100; // milliseconds without typing before searching
+
     public static void main(String[] args) {
         // Create main frame
         var frame = new JFrame("Code Convention Searcher");
@@ -32,6 +41,7 @@ public class SearcherGUI {
         var fileMenu = menuBar.add(new JMenu("File"));
         var loadItem = fileMenu.add("Load...");
         var buildItem = fileMenu.add("Build...");
+        var statsItem = fileMenu.add("Rendering Statistics");
 
         // Create search bar
         var searchPanel = new JPanel();
@@ -48,10 +58,12 @@ public class SearcherGUI {
         var resultPanel = new JPanel();
         resultPanel.setPreferredSize(new Dimension(366, 520));
         frame.add(resultPanel);
-        var resultList = new JList<>();
+        var resultModel = new ResultListModel();
+        var resultList = new JList<>(resultModel);
         var cellRenderer = new DefaultListCellRenderer();
         cellRenderer.setVerticalAlignment(SwingConstants.TOP);
         resultList.setCellRenderer(cellRenderer);
+        // Fixed cell sizes keep the list from rendering every row to measure it
         resultList.setFixedCellWidth(336);
         resultList.setFixedCellHeight(100);
         resultList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
@@ -63,7 +75,7 @@ public class SearcherGUI {
         // Create index building dialog
         var buildDialog = new JDialog(frame);
         buildDialog.setTitle("Build");
-        buildDialog.setSize(470, 124);
+        buildDialog.setSize(470, 156);
         buildDialog.setResizable(false);
         buildDialog.setLayout(new FlowLayout(FlowLayout.CENTER));
         buildDialog.setLocationByPlatform(true);
@@ -84,8 +96,19 @@ public class SearcherGUI {
         var outButton = new JButton("Browse");
         outButton.setPreferredSize(new Dimension(80, 18));
         buildDialog.add(outButton);
+        var fastCheckBox = new JCheckBox("Fast build (no parser)");
+        fastCheckBox.setToolTipText("Find noun phrases from part of speech only, faster but less accurate");
+        buildDialog.add(fastCheckBox);
         var buildButton = new JButton("Build");
         buildDialog.add(buildButton);
+        var progressBar = new JProgressBar();
+        progressBar.setPreferredSize(new Dimension(354, 20));
+        progressBar.setStringPainted(true);
+        progressBar.setString("");
+        buildDialog.add(progressBar);
+        var cancelButton = new JButton("Cancel");
+        cancelButton.setEnabled(false);
+        buildDialog.add(cancelButton);
 
         // Initialize searcher
         var searcher = new Searcher();
@@ -111,10 +134,10 @@ public class SearcherGUI {
                 String errMsg = null;
                 try {
                     searcher.load(file.getPath());
+                } catch (InvalidIndexException e) {
+                    errMsg = "Invalid index file";
                 } catch (IOException e) {
                     errMsg = "Error opening file";
-                } catch (ClassNotFoundException e) {
-                    errMsg = "Invalid index file";
                 }
                 if (errMsg != null) { // show error dialog box
                     showMessage(errMsg);
@@ -155,6 +178,7 @@ public class SearcherGUI {
             }
         });
 
+        var lastBuild = new AtomicReference<SwingWorker<Void, int[]>>();
         buildButton.addActionListener(event -> {
             var mdPath = mdField.getText();
             if (mdPath.isBlank()) {
@@ -168,34 +192,88 @@ public class SearcherGUI {
             }
             var nameStr = nameField.getText();
             var outPath = outDir + "\\" + nameStr.substring(0, nameStr.lastIndexOf('.')) + ".idx";
-            try {
-                searcher.build(mdPath, outPath);
-            } catch (IOException e) {
-                showMessage("Error reading Markdown file.");
-                return;
-            }
-            searchButton.setEnabled(true);
-            buildDialog.setVisible(false);
+            var mode = fastCheckBox.isSelected() ? BuildMode.CHUNK : BuildMode.PARSE;
+
+            // Build in the background, the dialog stays responsive and the build can be cancelled
+            var worker = new SwingWorker<Void, int[]>() {
+                @Override
+                protected Void doInBackground() throws IOException {
+                    searcher.setBuildMode(mode);
+                    searcher.build(mdPath, outPath, false, (done, total) -> publish(new int[]{done, total}));
+                    return null;
+                }
+
+                @Override
+                protected void process(List<int[]> chunks) {
+                    var latest = chunks.get(chunks.size() - 1);
+                    progressBar.setMaximum(latest[1]);
+                    progressBar.setValue(latest[0]);
+                    progressBar.setString(String.format("%d / %d blocks annotated", latest[0], latest[1]));
+                }
+
+                @Override
+                protected void done() {
+                    buildButton.setEnabled(true);
+                    cancelButton.setEnabled(false);
+                    progressBar.setValue(0);
+                    progressBar.setString("");
+                    if (isCancelled()) return;
+                    try {
+                        get();
+                    } catch (ExecutionException e) {
+                        showMessage("Error reading Markdown file.");
+                        return;
+                    } catch (InterruptedException e) { // not thrown once the worker is done
+                        return;
+                    }
+                    searchButton.setEnabled(true);
+                    buildDialog.setVisible(false);
+                }
+            };
+            lastBuild.set(worker);
+            buildButton.setEnabled(false);
+            cancelButton.setEnabled(true);
+            progressBar.setString("Parsing");
+            worker.execute();
+        });
+
+        cancelButton.addActionListener(event -> {
+            var worker = lastBuild.get();
+            if (worker != null) worker.cancel(true); // interrupts annotation
         });
 
         buildItem.addActionListener(event -> buildDialog.setVisible(true));
 
-        // Set search action
-        var results = new ArrayList<SearchResult>();
-        searchButton.addActionListener(event -> {
-            var searchText = searchField.getText();
-            if (searchText.length() == 0) return;
-            try {
-                results.clear();
-                results.addAll(searcher.search(searchText));
-            } catch (IndexNotLoadedException e) { // this will not occur in GUI program
-                e.printStackTrace();
-                return;
+        statsItem.addActionListener(event -> showMessage("<html>" + MarkdownRenderer.stats() + "</html>"));
+
+        // Set search action, a new search cancels the last one. The session keeps postings of the words typed so far.
+        var session = searcher.newSession();
+        var lastSearch = new AtomicReference<SearchWorker>();
+        searchButton.addActionListener(event -> startSearch(session, searchField.getText(), resultModel, lastSearch));
+        searchField.addActionListener(event -> {
+            if (searchButton.isEnabled()) startSearch(session, searchField.getText(), resultModel, lastSearch);
+        });
+
+        // Search as the user types once typing pauses, a search of older input is cancelled right away
+        var typingTimer = new Timer(TYPING_DELAY, event -> {
+            if (searchButton.isEnabled()) startSearch(session, searchField.getText(), resultModel, lastSearch);
+        });
+        typingTimer.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) { inputChanged(); }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) { inputChanged(); }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {} // attributes only
+
+            private void inputChanged() {
+                var previous = lastSearch.getAndSet(null);
+                if (previous != null) previous.cancel(true);
+                typingTimer.restart();
             }
-            var itemArr = new String[results.size()];
-            for (var i = 0; i < itemArr.length; i++)
-                itemArr[i] = MarkdownRenderer.render(results.get(i).getTag().toString());
-            resultList.setListData(itemArr);
         });
 
         // Set selection action
@@ -204,27 +282,11 @@ public class SearcherGUI {
             public void mouseClicked(MouseEvent e) {
                 if (e.getClickCount() < 2) return;
                 // Get HTML content to be displayed
-                var selItem = results.get(resultList.getSelectedIndex());
-                var pageStr = MarkdownRenderer.render(selItem.getTag().getNode().toString());
-                // Write to a temporary local file
-                var file = new File("tmp.html");
-                try {
-                    var out = new FileWriter(file);
-                    out.write(pageStr);
-                    out.close();
-                } catch (IOException ex) {
-                    ex.printStackTrace();
-                    return;
-                }
+                var index = resultList.getSelectedIndex();
+                if (index < 0) return;
+                var pageStr = MarkdownRenderer.render(resultModel.getResult(index).getTag().getNode());
                 // Show HTML in a window
-                JEditorPane pagePane = null;
-                try {
-                    pagePane = new JEditorPane(file.toURI().toURL());
-                } catch (IOException ex) {
-                    ex.printStackTrace();
-                    return;
-                }
-                pagePane.setText(pageStr);
+                var pagePane = new JEditorPane("text/html", pageStr);
                 pagePane.setSize(700, 0);
                 pagePane.setEditable(false);
                 var pageScroll = new JScrollPane(pagePane, ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS,
@@ -234,18 +296,54 @@ public class SearcherGUI {
                 pageDialog.setLocationByPlatform(true);
                 pageDialog.setSize(700, 500);
                 pageDialog.setVisible(true);
-                pageDialog.addWindowListener(new WindowAdapter() {
-                    @Override
-                    public void windowClosing(WindowEvent e) {
-                        file.delete();
-                    }
-                });
             }
         });
 
         frame.setVisible(true);
     }
 
+    // Cancels the last search and starts one of the text, called on the event dispatch thread without blocking it
+    private static void startSearch(QuerySession session, String searchText, ResultListModel model,
+                                    AtomicReference<SearchWorker> lastSearch) {
+        var previous = lastSearch.getAndSet(null);
+        if (previous != null) previous.cancel(true);
+        if (searchText.isBlank()) {
+            model.setResults(Collections.emptyList());
+            return;
+        }
+        var worker = new SearchWorker(session, searchText, model);
+        lastSearch.set(worker);
+        worker.execute();
+    }
+
+    // Searches off the event dispatch thread, rows are rendered when the list shows them
+    private static class SearchWorker extends SwingWorker<ArrayList<SearchResult>, Void> {
+        private final QuerySession session;
+        private final String query;
+        private final ResultListModel model;
+
+        SearchWorker(QuerySession session, String query, ResultListModel model) {
+            this.session = session;
+            this.query = query;
+            this.model = model;
+        }
+
+        @Override
+        protected ArrayList<SearchResult> doInBackground() throws IndexNotLoadedException {
+            return session.search(query, Integer.MAX_VALUE);
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) return; // superseded by a newer search
+            try {
+                model.setResults(get());
+            } catch (ExecutionException | InterruptedException e) {
+                e.printStackTrace(); // index is always loaded before searching is enabled
+            }
+        }
+    }
+
     private static void showMessage(String message) {
         var dialog = new JDialog();
         dialog.setSize(300, 200);
@@ -0,0 +1,79 @@
+package wzh.codeconvention.server;
+
+import wzh.codeconvention.core.IndexNotLoadedException;
+import wzh.codeconvention.core.Searcher;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+// Searches one query per input line and writes one JSON line of results for each, in the format of the service
+public class BatchSearch {
+    private static final int DEFAULT_K = 10;
+    private static final int CHUNK_SIZE = 4096; // queries read and searched at once
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: BatchSearch <index file> [query file or - for stdin] [results per query]");
+            System.exit(1);
+        }
+        try {
+            var searcher = new Searcher();
+            searcher.load(args[0]);
+            var k = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_K;
+            var in = args.length > 1 && !args[1].equals("-")
+                    ? Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8)
+                    : new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            var out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+
+            var begin = System.nanoTime();
+            var count = run(searcher, in, out, k);
+            var seconds = (System.nanoTime() - begin) / 1e9;
+            System.err.printf("Searched %d queries in %.2f s, %.0f queries/s%n", count, seconds,
+                    count / Math.max(seconds, 1e-9));
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    // Returns number of queries searched, blank lines are skipped
+    static long run(Searcher searcher, BufferedReader in, Writer out, int k)
+            throws IOException, IndexNotLoadedException {
+        long count = 0;
+        var chunk = new ArrayList<String>(CHUNK_SIZE);
+        try (in; out) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) continue;
+                chunk.add(line);
+                if (chunk.size() == CHUNK_SIZE) {
+                    write(chunk, searcher, out, k);
+                    count += chunk.size();
+                    chunk.clear();
+                }
+            }
+            write(chunk, searcher, out, k);
+            count += chunk.size();
+        }
+        return count;
+    }
+
+    private static void write(List<String> queries, Searcher searcher, Writer out, int k)
+            throws IOException, IndexNotLoadedException {
+        if (queries.isEmpty()) return;
+        var results = searcher.searchAll(queries, k);
+        for (var i = 0; i < queries.size(); i++) {
+            var json = new StringBuilder("{\"query\":").append(Json.quote(queries.get(i))).append(",\"results\":[");
+            var list = results.get(i);
+            for (var j = 0; j < list.size(); j++) {
+                if (j > 0) json.append(',');
+                SearchServer.appendResult(json, list.get(j));
+            }
+            out.write(json.append("]}\n").toString());
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package wzh.codeconvention.server;
+
+// Minimal JSON string encoding, enough for the flat responses of the service
+class Json {
+    static String quote(String str) {
+        if (str == null) return "null";
+        var builder = new StringBuilder(str.length() + 2).append('"');
+        for (var i = 0; i < str.length(); i++) {
+            var c = str.charAt(i);
+            switch (c) {
+                case '"': builder.append("\\\""); break;
+                case '\\': builder.append("\\\\"); break;
+                case '\n': builder.append("\\n"); break;
+                case '\r': builder.append("\\r"); break;
+                case '\t': builder.append("\\t"); break;
+                default:
+                    if (c < 0x20)
+                        builder.append(String.format("\\u%04x", (int) c));
+                    else
+                        builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+}
@@ -0,0 +1,255 @@
+package wzh.codeconvention.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import wzh.codeconvention.core.Block;
+import wzh.codeconvention.core.IndexNotLoadedException;
+import wzh.codeconvention.core.SearchResult;
+import wzh.codeconvention.core.Searcher;
+import wzh.codeconvention.core.SectionResult;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Local HTTP service answering queries against one shared index
+public class SearchServer {
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_K = 10;
+    private static final int DEFAULT_BLOCKS = 3; // best blocks under each section
+
+    private final Searcher searcher;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ServiceMetrics metrics = new ServiceMetrics();
+
+    private interface Endpoint {
+        String respond(HttpExchange exchange) throws IndexNotLoadedException;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: SearchServer <index file> [port]");
+            System.exit(1);
+        }
+        try {
+            var searcher = new Searcher(true);
+            searcher.load(args[0]);
+            var port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+            new SearchServer(searcher, port).start();
+            System.out.printf("Listening on http://localhost:%d/%n", port);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    public SearchServer(Searcher searcher, int port) throws IOException {
+        this.searcher = searcher;
+        // Only serve local clients such as IDE plugins
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/search", exchange -> handle(exchange, this::search, true));
+        server.createContext("/sections", exchange -> handle(exchange, this::sections, true));
+        server.createContext("/node/", exchange -> handle(exchange, this::node, true));
+        server.createContext("/metrics",
+                exchange -> handle(exchange, e -> metrics.toJson(searcher.getResultCacheStats()), false));
+        executor = newRequestExecutor();
+        server.setExecutor(executor);
+    }
+
+    public void start() { server.start(); }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    // One virtual thread per request where the runtime supports it, otherwise a cached pool
+    private static ExecutorService newRequestExecutor() {
+        try {
+            var factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private void handle(HttpExchange exchange, Endpoint endpoint, boolean measured) throws IOException {
+        var begin = System.nanoTime();
+        int status;
+        String body;
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                status = 405;
+                body = error("Only GET is supported.");
+            } else {
+                status = 200;
+                body = endpoint.respond(exchange);
+            }
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            body = error(e.getMessage());
+        } catch (NoSuchElementException e) {
+            status = 404;
+            body = error(e.getMessage());
+        } catch (IndexNotLoadedException e) {
+            status = 503;
+            body = error(e.getMessage());
+        } catch (RuntimeException e) {
+            status = 500;
+            body = error(e.toString());
+        }
+
+        var bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        try (var out = exchange.getResponseBody()) {
+            exchange.sendResponseHeaders(status, bytes.length);
+            out.write(bytes);
+        } finally {
+            if (measured)
+                metrics.record(System.nanoTime() - begin, status != 200);
+        }
+    }
+
+    // GET /search?q=<query>&k=<number of results>
+    private String search(HttpExchange exchange) throws IndexNotLoadedException {
+        var params = parseQuery(exchange.getRequestURI().getRawQuery());
+        var query = parseText(params);
+        var k = parseCount(params, "k", DEFAULT_K);
+
+        var json = new StringBuilder("{\"query\":").append(Json.quote(query)).append(",\"results\":[");
+        var results = searcher.search(query, k);
+        for (var i = 0; i < results.size(); i++) {
+            if (i > 0) json.append(',');
+            appendResult(json, results.get(i));
+        }
+        return json.append("]}").toString();
+    }
+
+    // GET /sections?q=<query>&k=<number of sections>&blocks=<number of blocks in each section>
+    private String sections(HttpExchange exchange) throws IndexNotLoadedException {
+        var params = parseQuery(exchange.getRequestURI().getRawQuery());
+        var query = parseText(params);
+        var k = parseCount(params, "k", DEFAULT_K);
+        var blocks = parseCount(params, "blocks", DEFAULT_BLOCKS);
+
+        var json = new StringBuilder("{\"query\":").append(Json.quote(query)).append(",\"sections\":[");
+        var sections = searcher.searchSections(query, k, blocks);
+        for (var i = 0; i < sections.size(); i++) {
+            if (i > 0) json.append(',');
+            appendSection(json, sections.get(i));
+        }
+        return json.append("]}").toString();
+    }
+
+    // GET /node/<node ID>
+    private String node(HttpExchange exchange) throws IndexNotLoadedException {
+        var idStr = exchange.getRequestURI().getPath().substring("/node/".length());
+        int id;
+        try {
+            id = Integer.parseInt(idStr);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid node ID.");
+        }
+        var node = searcher.getNode(id);
+        if (node == null) throw new NoSuchElementException("Node not found.");
+
+        var json = new StringBuilder("{\"id\":").append(node.getId())
+                .append(",\"headline\":").append(Json.quote(node.getHeadline()))
+                .append(",\"level\":").append(node.getLevel())
+                .append(",\"parent\":").append(node.getParent() == null ? -1 : node.getParent().getId())
+                .append(",\"children\":[");
+        var children = node.getChildren();
+        for (var i = 0; i < children.size(); i++) {
+            if (i > 0) json.append(',');
+            json.append(children.get(i).getId());
+        }
+        json.append("],\"contents\":[");
+        var contents = node.getContents();
+        for (var i = 0; i < contents.size(); i++) {
+            if (i > 0) json.append(',');
+            appendBlock(json, contents.get(i));
+        }
+        return json.append("]}").toString();
+    }
+
+    static void appendResult(StringBuilder json, SearchResult result) {
+        var tag = result.getTag();
+        json.append("{\"node\":").append(tag.getNode().getId())
+                .append(",\"headline\":").append(Json.quote(tag.getNode().getHeadline()))
+                .append(",\"words\":").append(result.getNumWords())
+                .append(",\"matches\":").append(result.getNumMatches())
+                .append(",\"expanded\":").append(result.getNumExpanded())
+                .append(",\"block\":");
+        appendBlock(json, tag.getBlock());
+        json.append('}');
+    }
+
+    private static void appendSection(StringBuilder json, SectionResult section) {
+        var node = section.getNode();
+        json.append("{\"node\":").append(node.getId())
+                .append(",\"headline\":").append(Json.quote(node.getHeadline()))
+                .append(",\"level\":").append(node.getLevel())
+                .append(",\"words\":").append(section.getNumWords())
+                .append(",\"matches\":").append(section.getNumMatches())
+                .append(",\"expanded\":").append(section.getNumExpanded())
+                .append(",\"results\":[");
+        var blocks = section.getBlocks();
+        for (var i = 0; i < blocks.size(); i++) {
+            if (i > 0) json.append(',');
+            appendResult(json, blocks.get(i));
+        }
+        json.append("]}");
+    }
+
+    private static void appendBlock(StringBuilder json, Block block) {
+        json.append("{\"id\":").append(block.getId())
+                .append(",\"type\":").append(Json.quote(block.getType().name()))
+                .append(",\"text\":").append(Json.quote(block.toString()))
+                .append('}');
+    }
+
+    private static String parseText(HashMap<String, String> params) {
+        var query = params.get("q");
+        if (query == null || query.isBlank())
+            throw new IllegalArgumentException("Missing query parameter q.");
+        return query;
+    }
+
+    // Positive count given by the named parameter, or the default if it is absent
+    private static int parseCount(HashMap<String, String> params, String name, int defaultCount) {
+        if (!params.containsKey(name)) return defaultCount;
+        int count;
+        try {
+            count = Integer.parseInt(params.get(name));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Invalid count %s.", name));
+        }
+        if (count <= 0) throw new IllegalArgumentException(String.format("Count %s must be positive.", name));
+        return count;
+    }
+
+    private static HashMap<String, String> parseQuery(String rawQuery) {
+        var params = new HashMap<String, String>();
+        if (rawQuery == null) return params;
+        for (var pair : rawQuery.split("&")) {
+            if (pair.isEmpty()) continue;
+            var sep = pair.indexOf('=');
+            var key = sep < 0 ? pair : pair.substring(0, sep);
+            var value = sep < 0 ? "" : pair.substring(sep + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + Json.quote(message) + "}";
+    }
+}
@@ -0,0 +1,59 @@
+package wzh.codeconvention.server;
+
+import wzh.codeconvention.core.CacheStats;
+import wzh.codeconvention.core.LatencyHistogram;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Request counters and latency distribution of the query service
+class ServiceMetrics {
+    private static final int WINDOW_SECONDS = 60;
+
+    private final long startTime = System.nanoTime();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram(); // in microseconds
+
+    // Requests in each second of the last minute, slot is tagged with its second
+    private final AtomicLongArray windowCounts = new AtomicLongArray(WINDOW_SECONDS);
+    private final AtomicLongArray windowSeconds = new AtomicLongArray(WINDOW_SECONDS);
+
+    void record(long nanos, boolean failed) {
+        requests.increment();
+        if (failed) errors.increment();
+        latency.record(nanos / 1000);
+
+        // Reset the slot if it still holds counts of a minute ago
+        var second = (System.nanoTime() - startTime) / 1_000_000_000L;
+        var slot = (int) (second % WINDOW_SECONDS);
+        var stamp = windowSeconds.get(slot);
+        if (stamp != second && windowSeconds.compareAndSet(slot, stamp, second))
+            windowCounts.set(slot, 0);
+        windowCounts.incrementAndGet(slot);
+    }
+
+    String toJson(CacheStats resultCache) {
+        var uptime = (System.nanoTime() - startTime) / 1e9;
+        var second = (long) uptime;
+        long recent = 0;
+        for (var i = 0; i < WINDOW_SECONDS; i++) {
+            // Exclude the current, incomplete second
+            var stamp = windowSeconds.get(i);
+            if (stamp < second && stamp >= second - WINDOW_SECONDS)
+                recent += windowCounts.get(i);
+        }
+        var window = Math.min(WINDOW_SECONDS, Math.max(1, second));
+        return String.format(Locale.ROOT, "{\"uptimeSeconds\":%.1f,\"requests\":%d,\"errors\":%d,"
+                        + "\"qps\":%.2f,\"qpsLastMinute\":%.2f,"
+                        + "\"latencyMicros\":{\"mean\":%.1f,\"p50\":%d,\"p90\":%d,\"p99\":%d,\"max\":%d},"
+                        + "\"resultCache\":{\"hits\":%d,\"misses\":%d,\"hitRatio\":%.3f,\"evictions\":%d,\"size\":%d}}",
+                uptime, requests.sum(), errors.sum(),
+                requests.sum() / Math.max(uptime, 1e-3), (double) recent / window,
+                latency.getMean(), latency.getValueAtPercentile(50), latency.getValueAtPercentile(90),
+                latency.getValueAtPercentile(99), latency.getMax(),
+                resultCache.getHits(), resultCache.getMisses(), resultCache.getHitRatio(), resultCache.getEvictions(),
+                resultCache.getSize());
+    }
+}
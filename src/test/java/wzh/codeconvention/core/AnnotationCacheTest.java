@@ -0,0 +1,96 @@
+package wzh.codeconvention.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+// A cache file that cannot be read is a miss, it never fails the build that uses it
+public class AnnotationCacheTest {
+    private static final String SETTINGS = "test";
+    private static final String TEXT = "Braces are used with if, else, for, do and while statements.";
+    // Offsets in a file of one entry: magic, signature and count, then key, term count and the first string
+    private static final int TERM_COUNT_OFFSET = 24;
+    private static final int STRING_OFFSET = 28;
+
+    private Path path;
+
+    @Before
+    public void setUp() throws IOException {
+        path = Files.createTempFile("annotations", ".cache");
+        Files.delete(path);
+        var cache = new AnnotationCache(path.toString(), 16, SETTINGS);
+        var terms = new TermList();
+        terms.add("brace", 0);
+        terms.add("statement", 10);
+        cache.put(TEXT, terms);
+        cache.save();
+        assertNotNull(new AnnotationCache(path.toString(), 16, SETTINGS).get(TEXT));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void negativeTermCountIsAMiss() throws IOException {
+        try (var file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(TERM_COUNT_OFFSET);
+            file.writeInt(-1);
+        }
+        assertMissAndRecovers();
+    }
+
+    @Test
+    public void hugeTermCountIsAMiss() throws IOException {
+        try (var file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(TERM_COUNT_OFFSET);
+            file.writeInt(Integer.MAX_VALUE);
+        }
+        assertMissAndRecovers();
+    }
+
+    @Test
+    public void malformedStringIsAMiss() throws IOException {
+        try (var file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(STRING_OFFSET + Short.BYTES);
+            file.write(0xff); // never starts a modified UTF-8 character
+        }
+        assertMissAndRecovers();
+    }
+
+    @Test
+    public void truncatedFileIsAMiss() throws IOException {
+        try (var file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(STRING_OFFSET + 3);
+        }
+        assertMissAndRecovers();
+    }
+
+    @Test
+    public void garbageFileIsAMiss() throws IOException {
+        var bytes = new byte[256];
+        new Random(42).nextBytes(bytes);
+        Files.write(path, bytes);
+        assertMissAndRecovers();
+    }
+
+    // The corrupt file loads as empty, and saving replaces it with a readable one
+    private void assertMissAndRecovers() throws IOException {
+        var cache = new AnnotationCache(path.toString(), 16, SETTINGS);
+        assertNull(cache.get(TEXT));
+        var terms = new TermList();
+        terms.add("brace", 0);
+        cache.put(TEXT, terms);
+        cache.save();
+        assertNotNull(new AnnotationCache(path.toString(), 16, SETTINGS).get(TEXT));
+    }
+}
@@ -0,0 +1,73 @@
+package wzh.codeconvention.core;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+// Code terms are indexed in the form queries give them, so annotations and operators find the code using them
+public class CodeTermTest {
+    private static final int K = 50;
+
+    private static Path index;
+    private static Searcher searcher;
+
+    @BeforeClass
+    public static void buildIndex() throws Exception {
+        // Code blocks are tokenized the same way in both modes
+        index = Files.createTempFile("guide", ".idx");
+        searcher = new Searcher();
+        searcher.setBuildMode(BuildMode.CHUNK);
+        searcher.build("google.md", index.toString());
+        searcher.load(index.toString());
+    }
+
+    @AfterClass
+    public static void deleteIndex() throws Exception {
+        Files.deleteIfExists(index);
+    }
+
+    @Test
+    public void annotationFindsCodeBlocks() throws Exception {
+        assertCodeBlocksFound("@Override", "@Override", 4);
+    }
+
+    @Test
+    public void operatorFindsCodeBlocks() throws Exception {
+        assertCodeBlocksFound("->", "->", 2);
+        assertCodeBlocksFound("x -> y", "->", 2);
+    }
+
+    @Test
+    public void queryJoinsOperatorTokens() {
+        var analyzer = new QueryAnalyzer(false, 0);
+        assertEquals(List.of("@override"), analyzer.analyze("@Override").lemmas);
+        assertEquals(List.of("string", "::", "valueof"), analyzer.analyze("String::valueOf").lemmas);
+        assertEquals(List.of("a", "-", ">", "b"), analyzer.analyze("a - > b").lemmas);
+    }
+
+    // Every code block containing the text is ranked
+    private static void assertCodeBlocksFound(String query, String text, int expectedBlocks) throws Exception {
+        var expected = new HashSet<String>();
+        for (var tag : IndexFile.load(index.toString()).tags) {
+            var block = tag.getBlock();
+            if (block.type == ContentType.CODE_BLOCK && block.toString().contains(text))
+                expected.add(block.toString());
+        }
+        assertEquals(expectedBlocks, expected.size());
+
+        var found = new ArrayList<String>();
+        for (var result : searcher.search(query, K)) {
+            assertTrue(result.getScore() > 0);
+            found.add(result.getTag().getBlock().toString());
+        }
+        assertTrue(query, found.containsAll(expected));
+    }
+}
@@ -0,0 +1,135 @@
+package wzh.codeconvention.core;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+// Searches running while another thread keeps loading indexes must each see one complete index
+public class ConcurrentReloadTest {
+    private static final String[] QUERIES = {
+            "static import", "wildcard import", "caught exception", "braces", "column limit",
+            "\"static import\"", "vertical whitespace", "javadoc summary"
+    };
+    private static final int SEARCH_THREADS = 8;
+    private static final int SEARCHES_PER_THREAD = 400;
+    private static final int K = 10;
+
+    private static Path textB, indexA, indexB;
+    private static final HashMap<String, List<String>> expectedA = new HashMap<>(), expectedB = new HashMap<>();
+
+    @BeforeClass
+    public static void buildIndexes() throws Exception {
+        // The second index only has the guide up to formatting, so many queries rank differently
+        var lines = Files.readAllLines(Path.of("google.md"), StandardCharsets.UTF_8);
+        var cut = lines.indexOf("## 4 Formatting");
+        textB = Files.createTempFile("guide", ".md");
+        Files.write(textB, lines.subList(0, cut), StandardCharsets.UTF_8);
+        indexA = Files.createTempFile("guide", ".idx");
+        indexB = Files.createTempFile("guide", ".idx");
+
+        var searcher = new Searcher();
+        searcher.setBuildMode(BuildMode.CHUNK);
+        searcher.build("google.md", indexA.toString());
+        searcher.build(textB.toString(), indexB.toString());
+        for (var query : QUERIES) {
+            searcher.load(indexA.toString());
+            expectedA.put(query, describe(searcher.search(query, K)));
+            searcher.load(indexB.toString());
+            expectedB.put(query, describe(searcher.search(query, K)));
+        }
+        assertNotEquals(expectedA, expectedB);
+    }
+
+    @AfterClass
+    public static void deleteIndexes() throws Exception {
+        for (var path : new Path[] {textB, indexA, indexB})
+            if (path != null) Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void searchesSeeOneSnapshotWhileReloading() throws Exception {
+        var searcher = new Searcher(true);
+        searcher.setResultCache(0, 0); // every search ranks against the index it reads
+        searcher.load(indexA.toString());
+        var errors = new ConcurrentLinkedQueue<Throwable>();
+        var done = new AtomicBoolean(false);
+        var reloads = new AtomicInteger();
+        var start = new CountDownLatch(1);
+
+        var reloader = new Thread(() -> {
+            try {
+                start.await();
+                for (var i = 0; !done.get(); i++) {
+                    searcher.load((i % 2 == 0 ? indexB : indexA).toString());
+                    reloads.incrementAndGet();
+                }
+            } catch (Throwable e) {
+                errors.add(e);
+            }
+        });
+
+        var seenA = new AtomicInteger();
+        var seenB = new AtomicInteger();
+        var searchers = new ArrayList<Thread>();
+        for (var t = 0; t < SEARCH_THREADS; t++) {
+            var offset = t;
+            searchers.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (var i = 0; i < SEARCHES_PER_THREAD; i++) {
+                        var query = QUERIES[(offset + i) % QUERIES.length];
+                        var result = describe(searcher.search(query, K));
+                        var isA = result.equals(expectedA.get(query));
+                        var isB = result.equals(expectedB.get(query));
+                        if (!isA && !isB)
+                            throw new AssertionError(String.format("Results of %s match no index: %s",
+                                    query, result));
+                        if (isA) seenA.incrementAndGet();
+                        if (isB) seenB.incrementAndGet();
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }));
+        }
+
+        reloader.start();
+        searchers.forEach(Thread::start);
+        start.countDown();
+        for (var thread : searchers)
+            thread.join();
+        done.set(true);
+        reloader.join();
+
+        if (!errors.isEmpty()) {
+            var error = new AssertionError(errors.size() + " searches or reloads failed.");
+            errors.forEach(error::addSuppressed);
+            throw error;
+        }
+        assertTrue(reloads.get() > 0);
+        assertTrue(seenA.get() > 0);
+        assertTrue(seenB.get() > 0);
+    }
+
+    // Results as values, so that lists from different loads of the same file compare equal
+    private static List<String> describe(List<SearchResult> results) {
+        var list = new ArrayList<String>();
+        for (var result : results) {
+            var tag = result.getTag();
+            list.add(String.format("%d|%d|%s|%s|%d|%d", tag.getBlock().getId(), tag.getNode().getId(),
+                    tag.getBlock(), result.getScore(), result.getNumWords(), result.getNumMatches()));
+        }
+        return list;
+    }
+}
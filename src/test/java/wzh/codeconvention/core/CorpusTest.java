@@ -0,0 +1,91 @@
+package wzh.codeconvention.core;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+// Shards are scored with the statistics of the whole corpus, as if all guides were in one index
+public class CorpusTest {
+    private static final String[] ADDENDUM = {
+            "# Addendum", "",
+            "Static imports of test helpers are allowed in unit tests.", "",
+            "Lambda expressions should be short and fit on one line where possible.", ""
+    };
+    private static final String[] QUERIES = {"static import", "lambda expression", "unit test", "line"};
+    private static final int K = 20;
+
+    private static final ArrayList<Path> paths = new ArrayList<>();
+    private static Corpus corpus;
+    private static Searcher merged;
+
+    @BeforeClass
+    public static void buildShards() throws Exception {
+        var addendumText = createTempFile(".md");
+        Files.write(addendumText, List.of(ADDENDUM), StandardCharsets.UTF_8);
+        // The addendum appended to the guide as a section of its own, its paragraphs are annotated the same
+        var mergedText = createTempFile(".md");
+        var lines = new ArrayList<>(Files.readAllLines(Path.of("google.md"), StandardCharsets.UTF_8));
+        lines.add("");
+        lines.add("#" + ADDENDUM[0]);
+        lines.addAll(List.of(ADDENDUM).subList(1, ADDENDUM.length));
+        Files.write(mergedText, lines, StandardCharsets.UTF_8);
+
+        corpus = new Corpus();
+        merged = new Searcher();
+        merged.setBuildMode(BuildMode.CHUNK);
+        merged.build(mergedText.toString(), createTempFile(".idx").toString());
+        var shard = new Searcher();
+        shard.setBuildMode(BuildMode.CHUNK);
+        var guideIndex = createTempFile(".idx").toString();
+        var addendumIndex = createTempFile(".idx").toString();
+        shard.build("google.md", guideIndex);
+        shard.build(addendumText.toString(), addendumIndex);
+        corpus.add("google", guideIndex);
+        corpus.add("addendum", addendumIndex);
+    }
+
+    @AfterClass
+    public static void deleteFiles() throws Exception {
+        for (var path : paths)
+            Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void scoresMatchOneIndexOfAllGuides() throws Exception {
+        for (var query : QUERIES) {
+            var expected = merged.search(query, K);
+            var actual = corpus.search(query, K);
+            assertEquals(query, expected.size(), actual.size());
+            for (var i = 0; i < expected.size(); i++) {
+                // An index stores its average length as a float, the corpus computes it from exact totals
+                var score = expected.get(i).getScore();
+                assertEquals(query, score, actual.get(i).getScore(), score * 1e-6);
+                assertEquals(query, expected.get(i).getTag().getBlock().toString(),
+                        actual.get(i).getTag().getBlock().toString());
+            }
+        }
+    }
+
+    @Test
+    public void resultsAreTaggedWithTheirGuide() throws Exception {
+        var sources = new ArrayList<String>();
+        for (var result : corpus.search("lambda expression", K))
+            sources.add(result.getSource());
+        assertTrue(sources.contains("addendum"));
+        assertTrue(sources.contains("google"));
+    }
+
+    private static Path createTempFile(String suffix) throws Exception {
+        var path = Files.createTempFile("corpus", suffix);
+        paths.add(path);
+        return path;
+    }
+}
@@ -0,0 +1,92 @@
+package wzh.codeconvention.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+// A corrupted index must fail to load with InvalidIndexException, whatever field is damaged
+public class IndexFileTest {
+    private Path indexPath;
+
+    @Before
+    public void setUp() throws IOException {
+        // Terms are not extracted, only the file layout matters here
+        var doc = Document.parse("google.md");
+        var lengths = new int[doc.tags.size()];
+        var dict = new HashMap<String, PostingList>();
+        var postings = new PostingList();
+        postings.add(0, 0);
+        postings.add(3, 1);
+        dict.put("import", postings);
+        lengths[0] = 1;
+        lengths[3] = 2;
+        indexPath = Files.createTempFile("index", ".idx");
+        IndexWriter.write(indexPath.toString(), BuildMode.PARSE, doc, lengths, dict);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(indexPath);
+    }
+
+    @Test
+    public void loadsIntactIndex() throws IOException {
+        var file = IndexFile.load(indexPath.toString());
+        assertEquals(1, file.numTerms());
+        assertArrayEquals(new int[] {0, 3}, file.postings("import", false).ids);
+    }
+
+    @Test
+    public void rejectsHugeNodeCount() throws IOException {
+        assertCorrupted(16, Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void rejectsNegativeCounts() throws IOException {
+        assertCorrupted(16, -1);
+        assertCorrupted(20, -5);
+        assertCorrupted(24, Integer.MIN_VALUE);
+    }
+
+    @Test
+    public void rejectsSectionsOutOfOrder() throws IOException {
+        assertCorrupted(44, Integer.MAX_VALUE);
+        assertCorrupted(32, IndexFile.HEADER_SIZE - 4);
+    }
+
+    @Test
+    public void rejectsBadStringLength() throws IOException {
+        // The first string is the headline of the root
+        assertCorrupted(IndexFile.HEADER_SIZE, -1);
+        assertCorrupted(IndexFile.HEADER_SIZE, Integer.MAX_VALUE);
+    }
+
+    private void assertCorrupted(long offset, int value) throws IOException {
+        int old;
+        try (var file = new RandomAccessFile(indexPath.toFile(), "rw")) {
+            file.seek(offset);
+            old = file.readInt();
+            file.seek(offset);
+            file.writeInt(value);
+        }
+        try {
+            IndexFile.load(indexPath.toString());
+            fail("Corrupted index is loaded.");
+        } catch (InvalidIndexException e) {
+            // expected
+        } finally {
+            try (var file = new RandomAccessFile(indexPath.toFile(), "rw")) {
+                file.seek(offset);
+                file.writeInt(old);
+            }
+        }
+    }
+}
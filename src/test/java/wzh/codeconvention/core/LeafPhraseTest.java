@@ -0,0 +1,77 @@
+package wzh.codeconvention.core;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.trees.Constituent;
+import edu.stanford.nlp.trees.LabeledScoredConstituentFactory;
+import edu.stanford.nlp.trees.TreeCoreAnnotations;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+// Leaf noun phrases found in one pass over the parse tree give the terms of the pairwise containment rule
+public class LeafPhraseTest {
+    @Test
+    public void termsOfGuideMatchContainmentRule() throws IOException {
+        var doc = Document.parse("google.md");
+        var texts = new ArrayList<String>();
+        for (var tag : doc.tags)
+            if (tag.getBlock().type == ContentType.PLAIN_TEXT) texts.add(tag.getBlock().text);
+        assertFalse(texts.isEmpty());
+
+        // Each paragraph is parsed once and both rules read the same trees
+        var pipeline = Searcher.newPipeline(BuildMode.PARSE);
+        var mismatches = Collections.synchronizedList(new ArrayList<String>());
+        texts.parallelStream().forEach(text -> {
+            var annotation = new Annotation(text);
+            pipeline.annotate(annotation);
+            var actual = describe(Searcher.extractTerms(annotation, BuildMode.PARSE));
+            var expected = describe(containmentRuleTerms(annotation));
+            if (!actual.equals(expected))
+                mismatches.add(String.format("%s%n  expected %s%n  actual   %s", text, expected, actual));
+        });
+        assertTrue(String.join("\n", mismatches), mismatches.isEmpty());
+    }
+
+    // Terms as before leaf phrases were found in one pass: a noun phrase is a leaf if it contains no other
+    // noun phrase among the distinct constituents of its sentence
+    private static TermList containmentRuleTerms(Annotation annotation) {
+        var terms = new TermList();
+        Searcher.addCodeKeywords(annotation, terms);
+        var base = 0;
+        for (var coreMap : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
+            var tokenList = coreMap.get(CoreAnnotations.TokensAnnotation.class);
+            var tree = coreMap.get(TreeCoreAnnotations.TreeAnnotation.class);
+            var nounPhrases = new ArrayList<Constituent>();
+            for (var cnst : tree.constituents(new LabeledScoredConstituentFactory())) {
+                if (cnst.label().toString().equals("NP"))
+                    nounPhrases.add(cnst);
+            }
+            for (var np : nounPhrases) {
+                var containsOther = false;
+                for (var other : nounPhrases) {
+                    if (np.contains(other) && np != other)
+                        containsOther = true;
+                }
+                if (!containsOther)
+                    Searcher.addLemmas(tokenList, np.start(), np.end() + 1, base, terms);
+            }
+            base += tokenList.size();
+        }
+        return terms.sorted();
+    }
+
+    // Order of terms at the same position does not matter to postings
+    private static List<String> describe(TermList terms) {
+        var list = new ArrayList<String>();
+        for (var i = 0; i < terms.size(); i++)
+            list.add(terms.position(i) + " " + terms.term(i));
+        Collections.sort(list);
+        return list;
+    }
+}
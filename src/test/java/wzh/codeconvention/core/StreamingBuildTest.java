@@ -0,0 +1,102 @@
+package wzh.codeconvention.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+// A streaming build that spills many runs must write the same index as a regular build
+public class StreamingBuildTest {
+    private static final long MEMORY_BUDGET = 4096; // a few paragraphs of postings per run
+    private static final int BATCH_SIZE = 32; // blocks annotated at once by one build thread
+
+    private Path regularPath, streamingPath, textPath;
+
+    @Before
+    public void setUp() throws IOException {
+        regularPath = Files.createTempFile("regular", ".idx");
+        streamingPath = Files.createTempFile("streaming", ".idx");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(regularPath);
+        Files.deleteIfExists(streamingPath);
+        if (textPath != null) Files.deleteIfExists(textPath);
+    }
+
+    @Test
+    public void streamingBuildMatchesRegularBuild() throws IOException {
+        // Merging does not depend on how terms are found, the fast mode keeps the test short
+        var searcher = new Searcher();
+        searcher.setBuildMode(BuildMode.CHUNK);
+        searcher.build("google.md", regularPath.toString());
+        searcher.buildStreaming("google.md", streamingPath.toString(), MEMORY_BUDGET);
+        assertSameIndex(IndexFile.load(regularPath.toString()), IndexFile.load(streamingPath.toString()));
+    }
+
+    @Test
+    public void manyRunsAreMergedInPasses() throws IOException {
+        // Copies of the guide, later ones without the document title
+        var lines = Files.readAllLines(Path.of("google.md"), StandardCharsets.UTF_8);
+        var text = new ArrayList<>(lines);
+        for (var c = 1; c < 4; c++) {
+            for (var line : lines)
+                if (!line.startsWith("# ")) text.add(line);
+        }
+        textPath = Files.createTempFile("guide", ".md");
+        Files.write(textPath, text, StandardCharsets.UTF_8);
+
+        // Every batch is spilled to a run of its own, more than can be merged at once
+        var searcher = new Searcher();
+        searcher.setBuildMode(BuildMode.CHUNK);
+        searcher.setBuildThreads(1);
+        searcher.build(textPath.toString(), regularPath.toString());
+        searcher.buildStreaming(textPath.toString(), streamingPath.toString(), 1);
+        var regular = IndexFile.load(regularPath.toString());
+        assertTrue(regular.tags.length > BATCH_SIZE * StreamingBuilder.MERGE_FAN_IN);
+        assertSameIndex(regular, IndexFile.load(streamingPath.toString()));
+    }
+
+    private static void assertSameIndex(IndexFile regular, IndexFile streaming) {
+        assertEquals(regular.mode, streaming.mode);
+        assertEquals(regular.averageLength(), streaming.averageLength(), 0);
+        assertEquals(regular.numBlocks(), streaming.numBlocks());
+        assertEquals(regular.nodes.length, streaming.nodes.length);
+        for (var i = 0; i < regular.nodes.length; i++) {
+            assertEquals(regular.nodes[i].headline, streaming.nodes[i].headline);
+            assertEquals(regular.nodes[i].level, streaming.nodes[i].level);
+            assertEquals(regular.nodes[i].parent == null, streaming.nodes[i].parent == null);
+            if (regular.nodes[i].parent != null)
+                assertEquals(regular.nodes[i].parent.id, streaming.nodes[i].parent.id);
+            assertEquals(regular.fingerprints[i], streaming.fingerprints[i]);
+        }
+        assertEquals(regular.tags.length, streaming.tags.length);
+        for (var i = 0; i < regular.tags.length; i++) {
+            assertEquals(regular.tags[i].getNode().id, streaming.tags[i].getNode().id);
+            assertEquals(regular.tags[i].getBlock().toString(), streaming.tags[i].getBlock().toString());
+            assertEquals(regular.blockLengths[i], streaming.blockLengths[i]);
+        }
+
+        assertEquals(regular.numTerms(), streaming.numTerms());
+        for (var i = 0; i < regular.numTerms(); i++) {
+            var term = regular.term(i);
+            assertEquals(term, streaming.term(i));
+            assertPostingsEqual(term, regular.postings(i, true), streaming.postings(i, true));
+            assertPostingsEqual(term, regular.sectionPostings(i), streaming.sectionPostings(i));
+        }
+    }
+
+    private static void assertPostingsEqual(String term, Postings expected, Postings actual) {
+        assertArrayEquals(term, expected.ids, actual.ids);
+        assertArrayEquals(term, expected.freqs, actual.freqs);
+        assertArrayEquals(term, expected.positions, actual.positions);
+    }
+}
@@ -0,0 +1,42 @@
+package wzh.codeconvention.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TermListTest {
+    @Test
+    public void sortedOrdersByPosition() {
+        var terms = new TermList();
+        terms.add("class", 3);
+        terms.add("static", 0);
+        terms.add("nested", 2);
+        terms.add("import", 1);
+        var sorted = terms.sorted();
+        assertEquals(4, sorted.size());
+        for (var i = 0; i < sorted.size(); i++)
+            assertEquals(i, sorted.position(i));
+        assertEquals("static", sorted.term(0));
+        assertEquals("class", sorted.term(3));
+    }
+
+    @Test
+    public void sortedKeepsOneOfEachTermAtPosition() {
+        // "a `try` block": the keyword and the noun phrase both yield "try" at the same token
+        var terms = new TermList();
+        terms.add("try", 1);
+        terms.add("try", 1);
+        terms.add("block", 2);
+        terms.add("try", 4);
+        terms.add("catch", 1);
+        var sorted = terms.sorted();
+        assertEquals(4, sorted.size());
+        assertEquals("try", sorted.term(0));
+        assertEquals(1, sorted.position(0));
+        assertEquals("catch", sorted.term(1));
+        assertEquals(1, sorted.position(1));
+        assertEquals("block", sorted.term(2));
+        assertEquals("try", sorted.term(3));
+        assertEquals(4, sorted.position(3));
+    }
+}